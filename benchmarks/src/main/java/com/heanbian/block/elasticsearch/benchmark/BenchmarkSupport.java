@@ -0,0 +1,39 @@
+package com.heanbian.block.elasticsearch.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.heanbian.block.elasticsearch.client.ConnectionString;
+import com.heanbian.block.elasticsearch.client.ElasticsearchTemplate;
+
+final class BenchmarkSupport {
+
+	private BenchmarkSupport() {
+	}
+
+	static ObjectMapper mapper() {
+		ObjectMapper om = new ObjectMapper();
+		om.registerModule(new JavaTimeModule());
+		om.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+		om.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+		return om;
+	}
+
+	static ElasticsearchTemplate template(StubCluster stub, ObjectMapper mapper) {
+		return new ElasticsearchTemplate(new ConnectionString(stub.connectionString()).getRestHighLevelClient(),
+				mapper);
+	}
+
+	static List<Doc> docs(int n) {
+		List<Doc> docs = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			docs.add(Doc.sample(i));
+		}
+		return docs;
+	}
+
+}
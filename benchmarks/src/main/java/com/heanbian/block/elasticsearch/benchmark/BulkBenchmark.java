@@ -0,0 +1,82 @@
+package com.heanbian.block.elasticsearch.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.heanbian.block.elasticsearch.client.ElasticsearchTemplate;
+import com.heanbian.block.elasticsearch.client.bulk.BulkSerializer;
+import com.heanbian.block.elasticsearch.client.codec.ObjectCodecRegistry;
+
+/**
+ * 批量写入：本地序列化，以及 bulkInsert/bulkUpdate/bulkInsertStreaming 对桩服务的完整调用
+ *
+ * @author heanbian
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulkBenchmark {
+
+	@Param({ "100", "1000", "10000" })
+	private int batchSize;
+
+	private StubCluster stub;
+	private ElasticsearchTemplate template;
+	private BulkSerializer serializer;
+	private List<Doc> docs;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		stub = new StubCluster(BenchmarkSupport.mapper(), 10, batchSize);
+		template = BenchmarkSupport.template(stub, BenchmarkSupport.mapper());
+		serializer = new BulkSerializer(new ObjectCodecRegistry(BenchmarkSupport.mapper()));
+		docs = BenchmarkSupport.docs(batchSize);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		template.client().close();
+		stub.close();
+	}
+
+	@Benchmark
+	public byte[][] serialize() {
+		return serializer.serialize(docs);
+	}
+
+	@Benchmark
+	public BulkResponse bulkInsert() {
+		return template.bulkInsert("bench", docs);
+	}
+
+	@Benchmark
+	public BulkResponse bulkUpdate() {
+		return template.bulkUpdate("bench", docs);
+	}
+
+	@Benchmark
+	public long bulkInsertStreaming() {
+		return template.bulkInsertStreaming("bench", docs.iterator(), 0L, false, null);
+	}
+
+}
@@ -0,0 +1,97 @@
+package com.heanbian.block.elasticsearch.benchmark;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import com.heanbian.block.elasticsearch.client.ElasticsearchId;
+
+/**
+ * 基准测试用的文档，字段组合接近常见的业务文档
+ *
+ * @author heanbian
+ *
+ */
+public class Doc implements ElasticsearchId {
+
+	private String id;
+	private String title;
+	private String body;
+	private long views;
+	private double score;
+	private List<String> tags;
+	private LocalDateTime createdAt;
+
+	public static Doc sample(int i) {
+		Doc d = new Doc();
+		d.id = String.valueOf(i);
+		d.title = "document title " + i;
+		d.body = "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt " + i;
+		d.views = i * 31L;
+		d.score = i / 7.0;
+		d.tags = List.of("alpha", "beta", "tag-" + (i % 10));
+		d.createdAt = LocalDateTime.of(2021, 7, 1, 12, 0).plusSeconds(i);
+		return d;
+	}
+
+	@Override
+	public String getElasticsearchId() {
+		return id;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public void setTitle(String title) {
+		this.title = title;
+	}
+
+	public String getBody() {
+		return body;
+	}
+
+	public void setBody(String body) {
+		this.body = body;
+	}
+
+	public long getViews() {
+		return views;
+	}
+
+	public void setViews(long views) {
+		this.views = views;
+	}
+
+	public double getScore() {
+		return score;
+	}
+
+	public void setScore(double score) {
+		this.score = score;
+	}
+
+	public List<String> getTags() {
+		return tags;
+	}
+
+	public void setTags(List<String> tags) {
+		this.tags = tags;
+	}
+
+	public LocalDateTime getCreatedAt() {
+		return createdAt;
+	}
+
+	public void setCreatedAt(LocalDateTime createdAt) {
+		this.createdAt = createdAt;
+	}
+
+}
@@ -0,0 +1,86 @@
+package com.heanbian.block.elasticsearch.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.heanbian.block.elasticsearch.client.ElasticsearchTemplate;
+import com.heanbian.block.elasticsearch.client.page.Page;
+
+/**
+ * 查询结果映射：search(..., Class) 的命中反序列化、findById 和深分页，响应来自桩服务
+ *
+ * @author heanbian
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+	private static final String[] INDICES = { "bench" };
+
+	@Param({ "10", "100", "1000" })
+	private int hits;
+
+	private StubCluster stub;
+	private ElasticsearchTemplate template;
+	private SearchSourceBuilder source;
+	private String cursor;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		stub = new StubCluster(BenchmarkSupport.mapper(), hits, 1);
+		template = BenchmarkSupport.template(stub, BenchmarkSupport.mapper());
+		source = new SearchSourceBuilder().query(QueryBuilders.termQuery("tags", "alpha")).size(hits)
+				.sort("views", SortOrder.ASC);
+		cursor = template.searchAfterDeepPaging(source, 1, hits, null, INDICES, "1m", Doc.class).getCursor();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		template.client().close();
+		stub.close();
+	}
+
+	@Benchmark
+	public List<Doc> typedSearch() {
+		return template.search(source, INDICES, Doc.class);
+	}
+
+	@Benchmark
+	public Doc findById() {
+		return template.findById("bench", "1", Doc.class);
+	}
+
+	@Benchmark
+	public Page<Doc> deepPagingJump() {
+		return template.searchScrollDeepPaging(source, 5, hits, INDICES, "1m", Doc.class);
+	}
+
+	@Benchmark
+	public Page<Doc> deepPagingCursor() {
+		return template.searchAfterDeepPaging(source, 2, hits, cursor, INDICES, "1m", Doc.class);
+	}
+
+}
@@ -0,0 +1,75 @@
+package com.heanbian.block.elasticsearch.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.heanbian.block.elasticsearch.client.codec.ObjectCodecRegistry;
+
+/**
+ * 单个文档序列化：ObjectMapper.writeValueAsBytes、缓存的 ObjectWriter 和 ObjectCodecRegistry 的复用缓冲区
+ *
+ * @author heanbian
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+	private ObjectMapper mapper;
+	private ObjectWriter writer;
+	private ObjectCodecRegistry codecs;
+	private Doc doc;
+	private byte[] json;
+
+	@Setup
+	public void setup() throws IOException {
+		mapper = BenchmarkSupport.mapper();
+		writer = mapper.writerFor(Doc.class);
+		codecs = new ObjectCodecRegistry(mapper);
+		doc = Doc.sample(42);
+		json = mapper.writeValueAsBytes(doc);
+	}
+
+	@Benchmark
+	public byte[] mapperWriteValueAsBytes() throws IOException {
+		return mapper.writeValueAsBytes(doc);
+	}
+
+	@Benchmark
+	public byte[] cachedWriter() throws IOException {
+		return writer.writeValueAsBytes(doc);
+	}
+
+	@Benchmark
+	public byte[] codecRegistryWrite() throws IOException {
+		return codecs.write(doc);
+	}
+
+	@Benchmark
+	public Doc mapperReadValue() throws IOException {
+		return mapper.readValue(json, Doc.class);
+	}
+
+	@Benchmark
+	public Doc codecRegistryRead() throws IOException {
+		return codecs.read(json, 0, json.length, Doc.class);
+	}
+
+}
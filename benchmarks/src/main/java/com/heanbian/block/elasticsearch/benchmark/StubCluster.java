@@ -0,0 +1,140 @@
+package com.heanbian.block.elasticsearch.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 本地 HTTP 桩服务，按路径返回预先生成的 _search、_bulk、_doc 和 _pit 响应，代替真实集群。
+ * _nodes/http 返回桩服务自身，用于验证节点嗅探。
+ *
+ * @author heanbian
+ *
+ */
+public class StubCluster implements AutoCloseable {
+
+	private final HttpServer server;
+	private final ExecutorService workers;
+
+	private volatile byte[] searchResponse;
+	private volatile byte[] bulkResponse;
+	private final byte[] getResponse;
+
+	public StubCluster(ObjectMapper mapper, int hits, int bulkItems) throws IOException {
+		this.searchResponse = searchResponse(mapper, hits);
+		this.bulkResponse = bulkResponse(bulkItems);
+		this.getResponse = getResponse(mapper);
+		this.workers = Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors()), r -> {
+			Thread t = new Thread(r, "stub-cluster");
+			t.setDaemon(true);
+			return t;
+		});
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+		server.setExecutor(workers);
+		server.createContext("/", this::handle);
+		server.start();
+	}
+
+	public String connectionString() {
+		return "elasticsearch://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	public void setBulkItems(int bulkItems) {
+		this.bulkResponse = bulkResponse(bulkItems);
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (InputStream in = exchange.getRequestBody()) {
+			in.transferTo(OutputStream.nullOutputStream());
+		}
+		String method = exchange.getRequestMethod();
+		String path = exchange.getRequestURI().getPath();
+		byte[] body;
+		int status = 200;
+		if (path.endsWith("/_bulk")) {
+			body = bulkResponse;
+		} else if (path.endsWith("/_search")) {
+			body = searchResponse;
+		} else if (path.endsWith("/_pit")) {
+			body = "DELETE".equals(method) ? bytes("{\"succeeded\":true,\"num_freed\":1}") : bytes("{\"id\":\"stub-pit\"}");
+		} else if (path.contains("/_doc/")) {
+			body = getResponse;
+		} else if (path.equals("/_nodes/http")) {
+			body = nodesResponse();
+		} else {
+			status = 404;
+			body = bytes("{}");
+		}
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	private byte[] nodesResponse() {
+		String address = "127.0.0.1:" + server.getAddress().getPort();
+		return bytes("{\"_nodes\":{\"total\":1,\"successful\":1,\"failed\":0},\"cluster_name\":\"stub\","
+				+ "\"nodes\":{\"stub-node\":{\"name\":\"stub-node\",\"host\":\"127.0.0.1\",\"ip\":\"127.0.0.1\","
+				+ "\"version\":\"7.13.3\",\"roles\":[\"data\",\"ingest\",\"master\"],\"attributes\":{},"
+				+ "\"http\":{\"bound_address\":[\"" + address + "\"],\"publish_address\":\"" + address + "\"}}}}");
+	}
+
+	private static byte[] searchResponse(ObjectMapper mapper, int hits) throws IOException {
+		StringBuilder sb = new StringBuilder(hits * 400);
+		sb.append("{\"took\":1,\"timed_out\":false,")
+				.append("\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0},")
+				.append("\"hits\":{\"total\":{\"value\":").append(hits * 100)
+				.append(",\"relation\":\"eq\"},\"max_score\":null,\"hits\":[");
+		for (int i = 0; i < hits; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append("{\"_index\":\"bench\",\"_type\":\"_doc\",\"_id\":\"").append(i)
+					.append("\",\"_score\":null,\"_source\":").append(mapper.writeValueAsString(Doc.sample(i)))
+					.append(",\"sort\":[").append(i).append("]}");
+		}
+		sb.append("]}}");
+		return bytes(sb.toString());
+	}
+
+	private static byte[] bulkResponse(int items) {
+		StringBuilder sb = new StringBuilder(items * 200);
+		sb.append("{\"took\":1,\"errors\":false,\"items\":[");
+		for (int i = 0; i < items; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append("{\"index\":{\"_index\":\"bench\",\"_type\":\"_doc\",\"_id\":\"").append(i)
+					.append("\",\"_version\":1,\"result\":\"created\",")
+					.append("\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},\"_seq_no\":").append(i)
+					.append(",\"_primary_term\":1,\"status\":201}}");
+		}
+		sb.append("]}");
+		return bytes(sb.toString());
+	}
+
+	private static byte[] getResponse(ObjectMapper mapper) throws IOException {
+		return bytes("{\"_index\":\"bench\",\"_type\":\"_doc\",\"_id\":\"1\",\"_version\":1,\"_seq_no\":1,"
+				+ "\"_primary_term\":1,\"found\":true,\"_source\":" + mapper.writeValueAsString(Doc.sample(1)) + "}");
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		workers.shutdownNow();
+	}
+
+}
@@ -0,0 +1,81 @@
+package com.heanbian.block.elasticsearch.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.heanbian.block.elasticsearch.client.ConnectionString;
+import com.heanbian.block.elasticsearch.client.ElasticsearchTemplate;
+
+/**
+ * 10000 个虚拟线程同时调用 findById，载体线程固定为4个，响应来自桩服务。
+ * blocking 使用 RestHighLevelClient 的同步接口，等待时固定载体线程；bridged 开启异步桥接模式。需要 JDK 21
+ *
+ * @author heanbian
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Djdk.virtualThreadScheduler.parallelism=4",
+		"-Djdk.virtualThreadScheduler.maxPoolSize=4" })
+public class VirtualThreadBenchmark {
+
+	private static final int CALLERS = 10_000;
+
+	@Param({ "blocking", "bridged" })
+	private String mode;
+
+	private StubCluster stub;
+	private ElasticsearchTemplate template;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		stub = new StubCluster(BenchmarkSupport.mapper(), 1, 1);
+		template = new ElasticsearchTemplate(
+				new ConnectionString(stub.connectionString() + "?maxConnTotal=256&maxConnPerRoute=256")
+						.getRestHighLevelClient(),
+				BenchmarkSupport.mapper());
+		template.setAsyncBridging("bridged".equals(mode));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		template.client().close();
+		stub.close();
+	}
+
+	@Benchmark
+	public int findById() {
+		AtomicInteger found = new AtomicInteger();
+		try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (int i = 0; i < CALLERS; i++) {
+				callers.execute(() -> {
+					if (template.findById("bench", "1", Doc.class) != null) {
+						found.incrementAndGet();
+					}
+				});
+			}
+		}
+		return found.get();
+	}
+
+}
@@ -7,20 +7,42 @@ import static org.apache.http.auth.AuthScope.ANY;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 import org.apache.http.HttpHost;
 import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.NodeSelector;
 import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestClientBuilder;
 import org.elasticsearch.client.RestClientBuilder.HttpClientConfigCallback;
+import org.elasticsearch.client.RestClientBuilder.RequestConfigCallback;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.sniff.SniffOnFailureListener;
+import org.elasticsearch.client.sniff.Sniffer;
+import org.elasticsearch.common.unit.TimeValue;
 
+import com.heanbian.block.elasticsearch.client.node.LeastLoadedNodeSelector;
+
+/**
+ * 连接串格式：{@code elasticsearch://[username:password@]host1:port1[,host2:port2...][?option=value&...]}
+ * <p>
+ * 支持的选项：maxConnTotal、maxConnPerRoute、ioThreads、keepAlive、connectTimeout、socketTimeout、compression、
+ * nodeSelector（roundRobin 或 leastLoaded）、preferCoordinatingOnly、sniff、sniffAfterFailure，
+ * 时间选项使用 Elasticsearch 的格式，如 {@code 500ms}、{@code 30s}、{@code 1m}
+ *
+ * @author heanbian
+ *
+ */
 public class ConnectionString {
 
 	private static final String ELASTICSEARCH_PREFIX = "elasticsearch://";
@@ -29,6 +51,57 @@ public class ConnectionString {
 	private String password;
 	private List<String> hosts;
 
+	/**
+	 * 连接池总连接数
+	 */
+	private int maxConnTotal = 200;
+
+	/**
+	 * 每个节点的连接数
+	 */
+	private int maxConnPerRoute = 50;
+
+	/**
+	 * I/O 线程数
+	 */
+	private int ioThreads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * 空闲连接保持时间，服务端返回 Keep-Alive 时取两者较小值
+	 */
+	private Duration keepAlive = Duration.ofMinutes(1);
+
+	private Duration connectTimeout = Duration.ofSeconds(1);
+
+	private Duration socketTimeout = Duration.ofSeconds(30);
+
+	/**
+	 * 是否 gzip 压缩请求体并接受压缩的响应
+	 */
+	private boolean compression;
+
+	/**
+	 * 是否按节点负载选择节点，默认轮询
+	 */
+	private boolean leastLoaded;
+
+	/**
+	 * 按负载选择时是否优先仅协调节点
+	 */
+	private boolean preferCoordinatingOnly;
+
+	/**
+	 * 通过 _nodes/http 定期刷新节点列表的间隔，null表示不嗅探，只使用连接串中的节点
+	 */
+	private Duration sniff;
+
+	/**
+	 * 节点失败后下一次嗅探的延迟
+	 */
+	private Duration sniffAfterFailure = Duration.ofMinutes(1);
+
+	private LeastLoadedNodeSelector nodeSelector;
+
 	public ConnectionString(final String connectionString) {
 		this.connectionString = connectionString;
 		boolean isElasticsearchProtocol = connectionString.startsWith(ELASTICSEARCH_PREFIX);
@@ -40,6 +113,12 @@ public class ConnectionString {
 
 		String unprocessedConnectionString = connectionString.substring(ELASTICSEARCH_PREFIX.length());
 
+		int optionsIdx = unprocessedConnectionString.indexOf('?', unprocessedConnectionString.lastIndexOf('@') + 1);
+		if (optionsIdx >= 0) {
+			parseOptions(unprocessedConnectionString.substring(optionsIdx + 1));
+			unprocessedConnectionString = unprocessedConnectionString.substring(0, optionsIdx);
+		}
+
 		String hostIdentifier;
 		int idx = unprocessedConnectionString.lastIndexOf("@");
 		if (idx > 0) {
@@ -62,6 +141,9 @@ public class ConnectionString {
 		}
 
 		this.hosts = unmodifiableList(parseHosts(asList(hostIdentifier.split(","))));
+		if (leastLoaded) {
+			this.nodeSelector = new LeastLoadedNodeSelector().setPreferCoordinatingOnly(preferCoordinatingOnly);
+		}
 	}
 
 	public String getUsername() {
@@ -80,7 +162,65 @@ public class ConnectionString {
 		return connectionString;
 	}
 
+	public int getMaxConnTotal() {
+		return maxConnTotal;
+	}
+
+	public int getMaxConnPerRoute() {
+		return maxConnPerRoute;
+	}
+
+	public int getIoThreads() {
+		return ioThreads;
+	}
+
+	public Duration getKeepAlive() {
+		return keepAlive;
+	}
+
+	public Duration getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public Duration getSocketTimeout() {
+		return socketTimeout;
+	}
+
+	public boolean isCompression() {
+		return compression;
+	}
+
+	public boolean isLeastLoaded() {
+		return leastLoaded;
+	}
+
+	public boolean isPreferCoordinatingOnly() {
+		return preferCoordinatingOnly;
+	}
+
+	public Duration getSniff() {
+		return sniff;
+	}
+
+	public Duration getSniffAfterFailure() {
+		return sniffAfterFailure;
+	}
+
+	/**
+	 * nodeSelector=leastLoaded 时按选项创建的节点选择器，否则为null
+	 */
+	public LeastLoadedNodeSelector getNodeSelector() {
+		return nodeSelector;
+	}
+
 	public RestHighLevelClient getRestHighLevelClient() {
+		return getRestHighLevelClient(nodeSelector);
+	}
+
+	/**
+	 * @param nodeSelector 按负载选择节点，null表示轮询
+	 */
+	public RestHighLevelClient getRestHighLevelClient(final LeastLoadedNodeSelector nodeSelector) {
 		ConnectionString conn = this;
 		List<String> nodes = conn.getHosts();
 		final int size = nodes.size();
@@ -94,19 +234,178 @@ public class ConnectionString {
 		}
 
 		RestClientBuilder rb = RestClient.builder(hosts);
+		final CredentialsProvider credentials;
 		if (conn.getUsername() != null && conn.getPassword() != null) {
-			final CredentialsProvider credentials = new BasicCredentialsProvider();
+			credentials = new BasicCredentialsProvider();
 			credentials.setCredentials(ANY, new UsernamePasswordCredentials(conn.getUsername(), conn.getPassword()));
+		} else {
+			credentials = null;
+		}
 
-			rb.setHttpClientConfigCallback(new HttpClientConfigCallback() {
+		final long keepAliveMillis = keepAlive.toMillis();
+		rb.setHttpClientConfigCallback(new HttpClientConfigCallback() {
+			@Override
+			public HttpAsyncClientBuilder customizeHttpClient(HttpAsyncClientBuilder httpClientBuilder) {
+				if (credentials != null) {
+					httpClientBuilder.setDefaultCredentialsProvider(credentials);
+				}
+				if (nodeSelector != null) {
+					nodeSelector.instrument(httpClientBuilder);
+				}
+				return httpClientBuilder.setMaxConnTotal(maxConnTotal).setMaxConnPerRoute(maxConnPerRoute)
+						.setDefaultIOReactorConfig(
+								IOReactorConfig.custom().setIoThreadCount(ioThreads).setSoKeepAlive(true).build())
+						.setKeepAliveStrategy((response, context) -> {
+							long serverMillis = DefaultConnectionKeepAliveStrategy.INSTANCE
+									.getKeepAliveDuration(response, context);
+							return serverMillis > 0 ? Math.min(serverMillis, keepAliveMillis) : keepAliveMillis;
+						});
+			}
+		});
+		rb.setRequestConfigCallback(new RequestConfigCallback() {
+			@Override
+			public RequestConfig.Builder customizeRequestConfig(RequestConfig.Builder requestConfigBuilder) {
+				return requestConfigBuilder.setConnectTimeout((int) connectTimeout.toMillis())
+						.setSocketTimeout((int) socketTimeout.toMillis());
+			}
+		});
+		rb.setCompressionEnabled(compression);
+		final SniffOnFailureListener sniffOnFailure = sniff != null ? new SniffOnFailureListener() : null;
+		if (nodeSelector != null) {
+			rb.setNodeSelector(nodeSelector);
+		} else if (sniff != null) {// 嗅探到的节点包含专用 master 节点
+			rb.setNodeSelector(NodeSelector.SKIP_DEDICATED_MASTERS);
+		}
+		if (nodeSelector != null && sniffOnFailure != null) {
+			final RestClient.FailureListener selectorListener = nodeSelector.failureListener();
+			rb.setFailureListener(new RestClient.FailureListener() {
 				@Override
-				public HttpAsyncClientBuilder customizeHttpClient(HttpAsyncClientBuilder httpClientBuilder) {
-					return httpClientBuilder.setDefaultCredentialsProvider(credentials);
+				public void onFailure(Node node) {
+					selectorListener.onFailure(node);
+					sniffOnFailure.onFailure(node);
 				}
 			});
+		} else if (nodeSelector != null) {
+			rb.setFailureListener(nodeSelector.failureListener());
+		} else if (sniffOnFailure != null) {
+			rb.setFailureListener(sniffOnFailure);
 		}
 
-		return new RestHighLevelClient(rb);
+		if (sniff == null) {
+			return new RestHighLevelClient(rb);
+		}
+		RestClient restClient = rb.build();
+		final Sniffer sniffer = Sniffer.builder(restClient).setSniffIntervalMillis((int) sniff.toMillis())
+				.setSniffAfterFailureDelayMillis((int) sniffAfterFailure.toMillis()).build();
+		sniffOnFailure.setSniffer(sniffer);
+		return new RestHighLevelClient(restClient, rc -> {// 先停止嗅探再关闭连接
+			sniffer.close();
+			rc.close();
+		}, Collections.emptyList()) {
+		};
+	}
+
+	private void parseOptions(final String options) {
+		for (String option : options.split("&")) {
+			if (option.isEmpty()) {
+				continue;
+			}
+			int idx = option.indexOf('=');
+			if (idx <= 0) {
+				throw new IllegalArgumentException(format(
+						"The connection string contains an invalid option '%s'. Options must be key=value", option));
+			}
+			String key = option.substring(0, idx);
+			String value = urldecode(option.substring(idx + 1));
+			switch (key) {
+			case "maxConnTotal":
+				this.maxConnTotal = parsePositiveInt(key, value);
+				break;
+			case "maxConnPerRoute":
+				this.maxConnPerRoute = parsePositiveInt(key, value);
+				break;
+			case "ioThreads":
+				this.ioThreads = parsePositiveInt(key, value);
+				break;
+			case "keepAlive":
+				this.keepAlive = parseDuration(key, value);
+				break;
+			case "connectTimeout":
+				this.connectTimeout = parseDuration(key, value);
+				break;
+			case "socketTimeout":
+				this.socketTimeout = parseDuration(key, value);
+				break;
+			case "compression":
+				this.compression = parseBoolean(key, value);
+				break;
+			case "nodeSelector":
+				if ("leastLoaded".equals(value)) {
+					this.leastLoaded = true;
+				} else if ("roundRobin".equals(value)) {
+					this.leastLoaded = false;
+				} else {
+					throw new IllegalArgumentException(format(
+							"The connection string option '%s' must be roundRobin or leastLoaded, but was '%s'", key,
+							value));
+				}
+				break;
+			case "preferCoordinatingOnly":
+				this.preferCoordinatingOnly = parseBoolean(key, value);
+				break;
+			case "sniff":
+				this.sniff = parsePositiveDuration(key, value);
+				break;
+			case "sniffAfterFailure":
+				this.sniffAfterFailure = parsePositiveDuration(key, value);
+				break;
+			default:
+				throw new IllegalArgumentException(
+						format("The connection string contains an unknown option '%s'", key));
+			}
+		}
+	}
+
+	private int parsePositiveInt(final String key, final String value) {
+		try {
+			int i = Integer.parseInt(value);
+			if (i > 0) {
+				return i;
+			}
+		} catch (NumberFormatException e) {
+		}
+		throw new IllegalArgumentException(
+				format("The connection string option '%s' must be a positive integer, but was '%s'", key, value));
+	}
+
+	private Duration parseDuration(final String key, final String value) {
+		try {
+			return Duration.ofMillis(TimeValue.parseTimeValue(value, key).millis());
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException(
+					format("The connection string option '%s' must be a time value such as 30s, but was '%s'", key,
+							value));
+		}
+	}
+
+	private Duration parsePositiveDuration(final String key, final String value) {
+		Duration d = parseDuration(key, value);
+		if (d.isZero() || d.isNegative()) {
+			throw new IllegalArgumentException(
+					format("The connection string option '%s' must be positive, but was '%s'", key, value));
+		}
+		return d;
+	}
+
+	private boolean parseBoolean(final String key, final String value) {
+		if ("true".equalsIgnoreCase(value)) {
+			return true;
+		}
+		if ("false".equalsIgnoreCase(value)) {
+			return false;
+		}
+		throw new IllegalArgumentException(
+				format("The connection string option '%s' must be true or false, but was '%s'", key, value));
 	}
 
 	private List<String> parseHosts(final List<String> rawHosts) {
@@ -3,17 +3,41 @@ package com.heanbian.block.elasticsearch.client;
 import static org.elasticsearch.client.RequestOptions.DEFAULT;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.apache.http.entity.ContentType;
+import org.apache.lucene.search.TotalHits;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
@@ -21,9 +45,14 @@ import org.elasticsearch.action.explain.ExplainRequest;
 import org.elasticsearch.action.explain.ExplainResponse;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.search.ClearScrollRequest;
 import org.elasticsearch.action.search.ClearScrollResponse;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchScrollRequest;
@@ -32,6 +61,9 @@ import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.action.update.UpdateResponse;
 import org.elasticsearch.client.Cancellable;
 import org.elasticsearch.client.GetAliasesResponse;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.client.core.CountRequest;
 import org.elasticsearch.client.core.CountResponse;
@@ -39,19 +71,22 @@ import org.elasticsearch.client.indices.CreateIndexRequest;
 import org.elasticsearch.client.indices.CreateIndexResponse;
 import org.elasticsearch.client.indices.DeleteAliasRequest;
 import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.common.xcontent.XContentType;
-import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
-import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.reindex.BulkByScrollResponse;
 import org.elasticsearch.index.reindex.DeleteByQueryRequest;
 import org.elasticsearch.index.reindex.UpdateByQueryRequest;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.builder.PointInTimeBuilder;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
-import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
-import org.elasticsearch.search.sort.SortBuilder;
+import org.elasticsearch.search.slice.SliceBuilder;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
@@ -59,10 +94,49 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateTimeDeserializer;
+import com.heanbian.block.elasticsearch.client.bulk.BulkIngester;
+import com.heanbian.block.elasticsearch.client.bulk.BulkIngesterOptions;
+import com.heanbian.block.elasticsearch.client.bulk.BulkResponses;
+import com.heanbian.block.elasticsearch.client.bulk.BulkResult;
+import com.heanbian.block.elasticsearch.client.bulk.BulkRetry;
+import com.heanbian.block.elasticsearch.client.bulk.BulkSerializer;
+import com.heanbian.block.elasticsearch.client.bulk.NdjsonBulkBody;
+import com.heanbian.block.elasticsearch.client.bulk.OneShotEntity;
+import com.heanbian.block.elasticsearch.client.bulk.PartialBulkException;
+import com.heanbian.block.elasticsearch.client.cache.DocumentCache;
+import com.heanbian.block.elasticsearch.client.cache.DocumentCache.CachedDocument;
+import com.heanbian.block.elasticsearch.client.cache.QueryCache;
+import com.heanbian.block.elasticsearch.client.codec.ObjectCodecRegistry;
+import com.heanbian.block.elasticsearch.client.codec.SearchResponseCodec;
+import com.heanbian.block.elasticsearch.client.executor.AsyncBridgingExecutor;
+import com.heanbian.block.elasticsearch.client.executor.AsyncExecutor;
+import com.heanbian.block.elasticsearch.client.executor.CircuitBreakerExecutor;
+import com.heanbian.block.elasticsearch.client.executor.DefaultAsyncExecutorImpl;
 import com.heanbian.block.elasticsearch.client.executor.DefaultExecutorImpl;
 import com.heanbian.block.elasticsearch.client.executor.Executor;
+import com.heanbian.block.elasticsearch.client.executor.ExponentialBackoff;
+import com.heanbian.block.elasticsearch.client.executor.HedgingExecutor;
+import com.heanbian.block.elasticsearch.client.executor.HedgingOptions;
+import com.heanbian.block.elasticsearch.client.executor.RequestCoalescer;
+import com.heanbian.block.elasticsearch.client.executor.RetryBudget;
+import com.heanbian.block.elasticsearch.client.metrics.ClientMetrics;
+import com.heanbian.block.elasticsearch.client.metrics.MetricsAsyncExecutor;
+import com.heanbian.block.elasticsearch.client.metrics.MetricsExecutor;
+import com.heanbian.block.elasticsearch.client.node.LeastLoadedNodeSelector;
+import com.heanbian.block.elasticsearch.client.operator.AsyncOperator;
 import com.heanbian.block.elasticsearch.client.operator.Operator;
+import com.heanbian.block.elasticsearch.client.operator.ReadOperator;
 import com.heanbian.block.elasticsearch.client.page.Page;
+import com.heanbian.block.elasticsearch.client.page.PageBoundaryCache;
+import com.heanbian.block.elasticsearch.client.page.PageCursor;
+import com.heanbian.block.elasticsearch.client.scroll.ExportResult;
+import com.heanbian.block.elasticsearch.client.scroll.ScrollIterator;
+import com.heanbian.block.elasticsearch.client.scroll.ScrollTracker;
+import com.heanbian.block.elasticsearch.client.scroll.SliceListener;
+import com.heanbian.block.elasticsearch.client.scroll.SlicedScrollExporter;
+import com.heanbian.block.elasticsearch.client.search.MultiSearchResult;
+import com.heanbian.block.elasticsearch.client.search.SearchQuery;
+import com.heanbian.block.elasticsearch.client.search.SearchResult;
 
 /**
  * 
@@ -71,11 +145,20 @@ import com.heanbian.block.elasticsearch.client.page.Page;
  */
 public class ElasticsearchTemplate {
 	private final static String DATE_TIME_FORMATTER = "yyyy-MM-dd HH:mm:ss";
-
-	private final Executor executor = new DefaultExecutorImpl(5);
+	private final static int MAX_RESULT_WINDOW = 10000;
+	private final static ContentType NDJSON = ContentType.create("application/x-ndjson", StandardCharsets.UTF_8);
+	private final static byte[] ACTION_SUFFIX = "}}\n".getBytes(StandardCharsets.UTF_8);
+	private final static byte[] DOC_PREFIX = "{\"doc\":".getBytes(StandardCharsets.UTF_8);
+	private final static byte[] DOC_SUFFIX = "}\n".getBytes(StandardCharsets.UTF_8);
+
+	private final RetryBudget retryBudget = RetryBudget.defaultBudget();
+	private final Executor baseExecutor;
+	private final AsyncExecutor baseAsyncExecutor;
+	private final boolean asyncMatchesExecutor;
 	private final AliasesOperator aliasesOperator = new AliasesOperator();
 	private final BulkOperator bulkOperator = new BulkOperator();
 	private final BulkAsyncOperator bulkAsyncOperator = new BulkAsyncOperator();
+	private final BulkFutureOperator bulkFutureOperator = new BulkFutureOperator();
 	private final CreateIndexOperator createIndexOperator = new CreateIndexOperator();
 	private final ClearScrollOperator clearScrollOperator = new ClearScrollOperator();
 	private final CountRequestOperator countRequestOperator = new CountRequestOperator();
@@ -86,21 +169,115 @@ public class ElasticsearchTemplate {
 	private final ExistsRequestOperator existsRequestOperator = new ExistsRequestOperator();
 	private final GetOperator operator = new GetOperator();
 	private final IndicesExistsOperator indicesExistsOperator = new IndicesExistsOperator();
+	private final MultiGetOperator multiGetOperator = new MultiGetOperator();
+	private final MultiSearchOperator multiSearchOperator = new MultiSearchOperator();
 	private final SearchOperator searchOperator = new SearchOperator();
 	private final SearchScrollOperator searchScrollOperator = new SearchScrollOperator();
+	private final LowLevelOperator lowLevelOperator = new LowLevelOperator();
 	private final UpdateRequestOperator updateRequestOperator = new UpdateRequestOperator();
 	private final UpdateByQueryRequestOperator updateByQueryRequestOperator = new UpdateByQueryRequestOperator();
 
 	private final RestHighLevelClient client;
 	private final ObjectMapper mapper;
+	private final ObjectCodecRegistry codecs;
+
+	private final ScrollTracker scrollTracker = new ScrollTracker();
+	private volatile PageBoundaryCache pageBoundaryCache;
+	private volatile Executor executor;
+	private volatile AsyncExecutor asyncExecutor;
+	private volatile ClientMetrics metrics;
+	private volatile HedgingExecutor hedging;
+	private volatile boolean asyncBridging;
+	private volatile LeastLoadedNodeSelector nodeSelector;
+	private volatile DocumentCache documentCache;
+	private volatile QueryCache queryCache;
+	private volatile RequestCoalescer<DocumentKey, MultiGetItemResponse> getCoalescer;
+	private volatile RequestCoalescer<PendingSearch, MultiSearchResponse.Item> searchCoalescer;
+	private volatile BulkSerializer bulkSerializer;
+	private volatile Semaphore bulkInFlight = new Semaphore(10);
+	private volatile BulkRetry bulkRetry = new BulkRetry(request -> exec(bulkOperator, request),
+			BackoffPolicy.exponentialBackoff());
 
 	public ElasticsearchTemplate(String connectionString) {
-		this(new ConnectionString(connectionString).getRestHighLevelClient(), defaultObjectMapper());
+		this(connectionString, null);
+	}
+
+	/**
+	 * @param nodeSelector 按负载选择节点，覆盖连接串中的 nodeSelector 选项
+	 */
+	public ElasticsearchTemplate(String connectionString, LeastLoadedNodeSelector nodeSelector) {
+		this(new ConnectionString(connectionString), nodeSelector);
 	}
 
+	private ElasticsearchTemplate(ConnectionString conn, LeastLoadedNodeSelector nodeSelector) {
+		this(conn.getRestHighLevelClient(nodeSelector != null ? nodeSelector : conn.getNodeSelector()),
+				defaultObjectMapper());
+		this.nodeSelector = nodeSelector != null ? nodeSelector : conn.getNodeSelector();
+	}
+
+	/**
+	 * @param mapper 文档读写使用的 ObjectMapper，可预先注册 Afterburner/Blackbird 等模块加速
+	 */
 	public ElasticsearchTemplate(RestHighLevelClient client, ObjectMapper mapper) {
 		this.client = client;
 		this.mapper = mapper;
+		this.codecs = new ObjectCodecRegistry(mapper);
+		this.bulkSerializer = new BulkSerializer(codecs);
+		this.baseExecutor = new DefaultExecutorImpl(5, ExponentialBackoff.defaultBackoff(), retryBudget);
+		this.baseAsyncExecutor = defaultAsyncExecutor();
+		this.asyncMatchesExecutor = true;
+		this.executor = baseExecutor;
+		this.asyncExecutor = baseAsyncExecutor;
+	}
+
+	/**
+	 * 只自定义同步执行器时，异步接口仍使用内置的异步执行器；请求合并、对冲和异步桥接会让同步方法走异步执行器，
+	 * 因此不能开启，需要时使用 {@link #ElasticsearchTemplate(RestHighLevelClient, ObjectMapper, Executor, AsyncExecutor)}
+	 *
+	 * @param executor 自定义执行器，如 {@code new CircuitBreakerExecutor(new DefaultExecutorImpl(5))}
+	 */
+	public ElasticsearchTemplate(RestHighLevelClient client, ObjectMapper mapper, Executor executor) {
+		this.client = client;
+		this.mapper = mapper;
+		this.codecs = new ObjectCodecRegistry(mapper);
+		this.bulkSerializer = new BulkSerializer(codecs);
+		this.baseExecutor = executor;
+		this.baseAsyncExecutor = defaultAsyncExecutor();
+		this.asyncMatchesExecutor = false;
+		this.executor = executor;
+		this.asyncExecutor = baseAsyncExecutor;
+	}
+
+	/**
+	 * @param executor      自定义同步执行器
+	 * @param asyncExecutor 与 executor 策略一致的异步执行器，请求合并、对冲和异步桥接经由它发送
+	 */
+	public ElasticsearchTemplate(RestHighLevelClient client, ObjectMapper mapper, Executor executor,
+			AsyncExecutor asyncExecutor) {
+		this.client = client;
+		this.mapper = mapper;
+		this.codecs = new ObjectCodecRegistry(mapper);
+		this.bulkSerializer = new BulkSerializer(codecs);
+		this.baseExecutor = executor;
+		this.baseAsyncExecutor = asyncExecutor;
+		this.asyncMatchesExecutor = true;
+		this.executor = executor;
+		this.asyncExecutor = asyncExecutor;
+	}
+
+	private AsyncExecutor defaultAsyncExecutor() {
+		return new DefaultAsyncExecutorImpl(5, ExponentialBackoff.defaultBackoff(), retryBudget, Duration.ofSeconds(30),
+				DefaultAsyncExecutorImpl.sharedScheduler());
+	}
+
+	/**
+	 * 让同步方法改走异步执行器的功能在只自定义了同步执行器时会绕过它（熔断、自定义重试等），直接拒绝
+	 */
+	private void requireAsyncExecutor(String feature) {
+		if (!asyncMatchesExecutor) {
+			throw new IllegalStateException(feature + " sends synchronous calls through the AsyncExecutor and would "
+					+ "bypass the custom Executor, construct the template with a matching AsyncExecutor");
+		}
 	}
 
 	private static ObjectMapper defaultObjectMapper() {
@@ -121,77 +298,224 @@ public class ElasticsearchTemplate {
 		return executor.exec(operator, request);
 	}
 
-	public class CountRequestOperator implements Operator<CountRequest, CountResponse> {
+	public <R, S> CompletableFuture<S> execAsync(AsyncOperator<R, S> operator, R request) {
+		return asyncExecutor.execAsync(operator, request);
+	}
+
+	/**
+	 * 开启指标统计，null表示关闭。重试次数通过 {@link Executor#setRetryListener} 计入对应 Operator，
+	 * 自定义执行器需要实现该方法（包装型执行器转发给被包装者）才会统计重试。
+	 * 收发字节数需要另外用 {@link ClientMetrics#instrument} 安装到 HTTP 客户端
+	 */
+	public void setMetrics(ClientMetrics metrics) {
+		baseExecutor.setRetryListener(metrics);
+		baseAsyncExecutor.setRetryListener(metrics);
+		this.metrics = metrics;
+		configureExecutors();
+	}
+
+	public ClientMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * 开启只读请求（get、exists、count、search 及其批量形式）的对冲，null表示关闭。
+	 * 对冲请求包装构造时传入的执行器，同步调用的只读请求经由异步执行器发送，只自定义了同步执行器时拒绝开启，
+	 * 如需熔断请使用 {@link CircuitBreakerExecutor#async} 构造匹配的异步执行器。之后设置的指标统计按一次调用计入
+	 */
+	public void setHedging(HedgingOptions options) {
+		if (options != null) {
+			requireAsyncExecutor("hedging");
+		}
+		this.hedging = options == null ? null
+				: new HedgingExecutor(baseExecutor, baseAsyncExecutor, options, nodeSelector);
+		configureExecutors();
+	}
+
+	public HedgingExecutor getHedging() {
+		return hedging;
+	}
+
+	/**
+	 * 异步桥接模式：同步方法改为调用异步接口并在 CompletableFuture 上等待，等待可中断，重试退避不占用调用线程，
+	 * 不会因 RestHighLevelClient 同步接口内部的 synchronized 把虚拟线程固定在载体线程上。
+	 * 在 JDK 21 的虚拟线程中调用本类时开启。读写请求都改由异步执行器发送，只自定义了同步执行器时拒绝开启
+	 */
+	public void setAsyncBridging(boolean asyncBridging) {
+		if (asyncBridging) {
+			requireAsyncExecutor("async bridging");
+		}
+		this.asyncBridging = asyncBridging;
+		configureExecutors();
+	}
+
+	public boolean isAsyncBridging() {
+		return asyncBridging;
+	}
+
+	private void configureExecutors() {
+		ClientMetrics m = metrics;
+		HedgingExecutor h = hedging;
+		AsyncExecutor a = h != null ? h : baseAsyncExecutor;
+		Executor e = asyncBridging ? new AsyncBridgingExecutor(baseExecutor, a) : h != null ? h : baseExecutor;
+		this.executor = m == null ? e : new MetricsExecutor(e, m);
+		this.asyncExecutor = m == null ? a : new MetricsAsyncExecutor(a, m);
+	}
+
+	public class CountRequestOperator implements Operator<CountRequest, CountResponse>,
+			AsyncOperator<CountRequest, CountResponse>, ReadOperator<CountRequest> {
 
 		@Override
 		public CountResponse operator(CountRequest request) throws IOException {
 			return client.count(request, DEFAULT);
 		}
+
+		@Override
+		public Cancellable operator(CountRequest request, ActionListener<CountResponse> listener) {
+			return client.countAsync(request, DEFAULT, listener);
+		}
 	}
 
-	public class UpdateRequestOperator implements Operator<UpdateRequest, UpdateResponse> {
+	public class UpdateRequestOperator
+			implements Operator<UpdateRequest, UpdateResponse>, AsyncOperator<UpdateRequest, UpdateResponse> {
 
 		@Override
 		public UpdateResponse operator(UpdateRequest request) throws IOException {
-			return client.update(request, DEFAULT);
+			try {
+				return client.update(request, DEFAULT);
+			} finally {
+				invalidateDocument(request.index(), request.id());
+			}
+		}
+
+		@Override
+		public Cancellable operator(UpdateRequest request, ActionListener<UpdateResponse> listener) {
+			return client.updateAsync(request, DEFAULT,
+					ActionListener.runBefore(listener, () -> invalidateDocument(request.index(), request.id())));
 		}
 	}
 
-	public class ExistsRequestOperator implements Operator<GetRequest, Boolean> {
+	public class ExistsRequestOperator
+			implements Operator<GetRequest, Boolean>, AsyncOperator<GetRequest, Boolean>, ReadOperator<GetRequest> {
 
 		@Override
 		public Boolean operator(GetRequest request) throws IOException {
 			return client.exists(request, DEFAULT);
 		}
+
+		@Override
+		public Cancellable operator(GetRequest request, ActionListener<Boolean> listener) {
+			return client.existsAsync(request, DEFAULT, listener);
+		}
 	}
 
-	public class DeleteByQueryRequestOperator implements Operator<DeleteByQueryRequest, BulkByScrollResponse> {
+	public class DeleteByQueryRequestOperator
+			implements Operator<DeleteByQueryRequest, BulkByScrollResponse>,
+			AsyncOperator<DeleteByQueryRequest, BulkByScrollResponse> {
 
 		@Override
 		public BulkByScrollResponse operator(DeleteByQueryRequest request) throws IOException {
-			return client.deleteByQuery(request, DEFAULT);
+			try {
+				return client.deleteByQuery(request, DEFAULT);
+			} finally {
+				invalidateIndices(request.indices());
+			}
+		}
+
+		@Override
+		public Cancellable operator(DeleteByQueryRequest request, ActionListener<BulkByScrollResponse> listener) {
+			return client.deleteByQueryAsync(request, DEFAULT,
+					ActionListener.runBefore(listener, () -> invalidateIndices(request.indices())));
 		}
 	}
 
-	public class UpdateByQueryRequestOperator implements Operator<UpdateByQueryRequest, BulkByScrollResponse> {
+	public class UpdateByQueryRequestOperator
+			implements Operator<UpdateByQueryRequest, BulkByScrollResponse>,
+			AsyncOperator<UpdateByQueryRequest, BulkByScrollResponse> {
 
 		@Override
 		public BulkByScrollResponse operator(UpdateByQueryRequest request) throws IOException {
-			return client.updateByQuery(request, DEFAULT);
+			try {
+				return client.updateByQuery(request, DEFAULT);
+			} finally {
+				invalidateIndices(request.indices());
+			}
+		}
+
+		@Override
+		public Cancellable operator(UpdateByQueryRequest request, ActionListener<BulkByScrollResponse> listener) {
+			return client.updateByQueryAsync(request, DEFAULT,
+					ActionListener.runBefore(listener, () -> invalidateIndices(request.indices())));
 		}
 	}
 
-	public class CreateIndexOperator implements Operator<CreateIndexRequest, CreateIndexResponse> {
+	public class CreateIndexOperator
+			implements Operator<CreateIndexRequest, CreateIndexResponse>,
+			AsyncOperator<CreateIndexRequest, CreateIndexResponse> {
 
 		@Override
 		public CreateIndexResponse operator(CreateIndexRequest request) throws IOException {
 			return client.indices().create(request, DEFAULT);
 		}
+
+		@Override
+		public Cancellable operator(CreateIndexRequest request, ActionListener<CreateIndexResponse> listener) {
+			return client.indices().createAsync(request, DEFAULT, listener);
+		}
 	}
 
-	public class DeleteIndexOperator implements Operator<DeleteIndexRequest, AcknowledgedResponse> {
+	public class DeleteIndexOperator
+			implements Operator<DeleteIndexRequest, AcknowledgedResponse>,
+			AsyncOperator<DeleteIndexRequest, AcknowledgedResponse> {
 
 		@Override
 		public AcknowledgedResponse operator(DeleteIndexRequest request) throws IOException {
-			return client.indices().delete(request, DEFAULT);
+			try {
+				return client.indices().delete(request, DEFAULT);
+			} finally {
+				invalidateIndices(request.indices());
+			}
+		}
+
+		@Override
+		public Cancellable operator(DeleteIndexRequest request, ActionListener<AcknowledgedResponse> listener) {
+			return client.indices().deleteAsync(request, DEFAULT,
+					ActionListener.runBefore(listener, () -> invalidateIndices(request.indices())));
 		}
 	}
 
 	public class DeleteAliasOperator
-			implements Operator<DeleteAliasRequest, org.elasticsearch.client.core.AcknowledgedResponse> {
+			implements Operator<DeleteAliasRequest, org.elasticsearch.client.core.AcknowledgedResponse>,
+			AsyncOperator<DeleteAliasRequest, org.elasticsearch.client.core.AcknowledgedResponse> {
 
 		@Override
 		public org.elasticsearch.client.core.AcknowledgedResponse operator(DeleteAliasRequest request)
 				throws IOException {
 			return client.indices().deleteAlias(request, DEFAULT);
 		}
+
+		@Override
+		public Cancellable operator(DeleteAliasRequest request,
+				ActionListener<org.elasticsearch.client.core.AcknowledgedResponse> listener) {
+			return client.indices().deleteAliasAsync(request, DEFAULT, listener);
+		}
 	}
 
-	public class BulkOperator implements Operator<BulkRequest, BulkResponse> {
+	public class BulkOperator implements Operator<BulkRequest, BulkResponse>, AsyncOperator<BulkRequest, BulkResponse> {
 
 		@Override
 		public BulkResponse operator(BulkRequest request) throws IOException {
-			return client.bulk(request, DEFAULT);
+			try {
+				return client.bulk(request, DEFAULT);
+			} finally {
+				invalidateDocuments(request);
+			}
+		}
+
+		@Override
+		public Cancellable operator(BulkRequest request, ActionListener<BulkResponse> listener) {
+			return client.bulkAsync(request, DEFAULT,
+					ActionListener.runBefore(listener, () -> invalidateDocuments(request)));
 		}
 	}
 
@@ -199,73 +523,216 @@ public class ElasticsearchTemplate {
 
 		@Override
 		public Cancellable operator(BulkRequest request) throws IOException {
-			return client.bulkAsync(request, DEFAULT, new ActionListener<BulkResponse>() {
+			final Semaphore permits = acquireBulkPermit();
+			try {
+				return bulkOperator.operator(request, ActionListener.wrap(permits::release));
+			} catch (RuntimeException e) {
+				permits.release();
+				throw e;
+			}
+		}
+	}
 
-				@Override
-				public void onResponse(BulkResponse response) {// ignore
-				}
+	public class BulkFutureOperator implements Operator<BulkRequest, CompletableFuture<BulkResponse>> {
 
-				@Override
-				public void onFailure(Exception e) {// ignore
-				}
-			});
+		@Override
+		public CompletableFuture<BulkResponse> operator(BulkRequest request) throws IOException {
+			final Semaphore permits = acquireBulkPermit();
+			CompletableFuture<BulkResponse> future;
+			try {
+				future = execAsync(bulkOperator, request);
+			} catch (RuntimeException e) {
+				permits.release();
+				throw e;
+			}
+			future.whenComplete((r, e) -> permits.release());
+			return future;
+		}
+	}
+
+	/**
+	 * 在途批量请求达到上限时阻塞调用方，直到有请求完成
+	 */
+	private Semaphore acquireBulkPermit() {
+		final Semaphore permits = bulkInFlight;
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		return permits;
+	}
+
+	public void setMaxInFlightBulkRequests(int maxInFlightBulkRequests) {
+		if (maxInFlightBulkRequests <= 0) {
+			throw new IllegalArgumentException("maxInFlightBulkRequests must be positive");
 		}
+		this.bulkInFlight = new Semaphore(maxInFlightBulkRequests);
 	}
 
-	public class ExplainOperator implements Operator<ExplainRequest, ExplainResponse> {
+	public class ExplainOperator
+			implements Operator<ExplainRequest, ExplainResponse>, AsyncOperator<ExplainRequest, ExplainResponse> {
 
 		@Override
 		public ExplainResponse operator(ExplainRequest request) throws IOException {
 			return client.explain(request, DEFAULT);
 		}
+
+		@Override
+		public Cancellable operator(ExplainRequest request, ActionListener<ExplainResponse> listener) {
+			return client.explainAsync(request, DEFAULT, listener);
+		}
 	}
 
-	public class GetOperator implements Operator<GetRequest, GetResponse> {
+	public class GetOperator implements Operator<GetRequest, GetResponse>, AsyncOperator<GetRequest, GetResponse>,
+			ReadOperator<GetRequest> {
 
 		@Override
 		public GetResponse operator(GetRequest request) throws IOException {
 			return client.get(request, DEFAULT);
 		}
+
+		@Override
+		public Cancellable operator(GetRequest request, ActionListener<GetResponse> listener) {
+			return client.getAsync(request, DEFAULT, listener);
+		}
+	}
+
+	public class MultiGetOperator implements Operator<MultiGetRequest, MultiGetResponse>,
+			AsyncOperator<MultiGetRequest, MultiGetResponse>, ReadOperator<MultiGetRequest> {
+
+		@Override
+		public MultiGetResponse operator(MultiGetRequest request) throws IOException {
+			return client.mget(request, DEFAULT);
+		}
+
+		@Override
+		public Cancellable operator(MultiGetRequest request, ActionListener<MultiGetResponse> listener) {
+			return client.mgetAsync(request, DEFAULT, listener);
+		}
 	}
 
-	public class SearchOperator implements Operator<SearchRequest, SearchResponse> {
+	public class SearchOperator implements Operator<SearchRequest, SearchResponse>,
+			AsyncOperator<SearchRequest, SearchResponse>, ReadOperator<SearchRequest> {
+
+		@Override
+		public boolean isIdempotent(SearchRequest request) {
+			return request.scroll() == null;
+		}
 
 		@Override
 		public SearchResponse operator(SearchRequest request) throws IOException {
 			return client.search(request, DEFAULT);
 		}
+
+		@Override
+		public Cancellable operator(SearchRequest request, ActionListener<SearchResponse> listener) {
+			return client.searchAsync(request, DEFAULT, listener);
+		}
 	}
 
-	public class SearchScrollOperator implements Operator<SearchScrollRequest, SearchResponse> {
+	public class MultiSearchOperator
+			implements Operator<MultiSearchRequest, MultiSearchResponse>,
+			AsyncOperator<MultiSearchRequest, MultiSearchResponse>, ReadOperator<MultiSearchRequest> {
+
+		@Override
+		public boolean isIdempotent(MultiSearchRequest request) {
+			return request.requests().stream().allMatch(r -> r.scroll() == null);
+		}
+
+		@Override
+		public MultiSearchResponse operator(MultiSearchRequest request) throws IOException {
+			return client.msearch(request, DEFAULT);
+		}
+
+		@Override
+		public Cancellable operator(MultiSearchRequest request, ActionListener<MultiSearchResponse> listener) {
+			return client.msearchAsync(request, DEFAULT, listener);
+		}
+	}
+
+	public class SearchScrollOperator
+			implements Operator<SearchScrollRequest, SearchResponse>,
+			AsyncOperator<SearchScrollRequest, SearchResponse> {
 
 		@Override
 		public SearchResponse operator(SearchScrollRequest request) throws IOException {
 			return client.scroll(request, DEFAULT);
 		}
+
+		@Override
+		public Cancellable operator(SearchScrollRequest request, ActionListener<SearchResponse> listener) {
+			return client.scrollAsync(request, DEFAULT, listener);
+		}
 	}
 
-	public class ClearScrollOperator implements Operator<ClearScrollRequest, ClearScrollResponse> {
+	public class ClearScrollOperator
+			implements Operator<ClearScrollRequest, ClearScrollResponse>,
+			AsyncOperator<ClearScrollRequest, ClearScrollResponse> {
 
 		@Override
 		public ClearScrollResponse operator(ClearScrollRequest request) throws IOException {
 			return client.clearScroll(request, DEFAULT);
 		}
+
+		@Override
+		public Cancellable operator(ClearScrollRequest request, ActionListener<ClearScrollResponse> listener) {
+			return client.clearScrollAsync(request, DEFAULT, listener);
+		}
 	}
 
-	public class IndicesExistsOperator implements Operator<GetIndexRequest, Boolean> {
+	public class IndicesExistsOperator
+			implements Operator<GetIndexRequest, Boolean>, AsyncOperator<GetIndexRequest, Boolean> {
 
 		@Override
 		public Boolean operator(GetIndexRequest request) throws IOException {
 			return client.indices().exists(request, DEFAULT);
 		}
+
+		@Override
+		public Cancellable operator(GetIndexRequest request, ActionListener<Boolean> listener) {
+			return client.indices().existsAsync(request, DEFAULT, listener);
+		}
 	}
 
-	public class AliasesOperator implements Operator<GetAliasesRequest, GetAliasesResponse> {
+	public class AliasesOperator
+			implements Operator<GetAliasesRequest, GetAliasesResponse>,
+			AsyncOperator<GetAliasesRequest, GetAliasesResponse> {
 
 		@Override
 		public GetAliasesResponse operator(GetAliasesRequest request) throws IOException {
 			return client.indices().getAlias(request, DEFAULT);
 		}
+
+		@Override
+		public Cancellable operator(GetAliasesRequest request, ActionListener<GetAliasesResponse> listener) {
+			return client.indices().getAliasAsync(request, DEFAULT, listener);
+		}
+	}
+
+	public class LowLevelOperator implements Operator<Request, Response>, AsyncOperator<Request, Response> {
+
+		@Override
+		public Response operator(Request request) throws IOException {
+			return client.getLowLevelClient().performRequest(request);
+		}
+
+		@Override
+		public Cancellable operator(Request request, ActionListener<Response> listener) {
+			return client.getLowLevelClient().performRequestAsync(request, new ResponseListener() {
+
+				@Override
+				public void onSuccess(Response response) {
+					listener.onResponse(response);
+				}
+
+				@Override
+				public void onFailure(Exception exception) {
+					listener.onFailure(exception);
+				}
+			});
+		}
 	}
 
 	public Set<String> getAliases() {
@@ -303,16 +770,20 @@ public class ElasticsearchTemplate {
 	}
 
 	public <T extends ElasticsearchId> BulkResponse bulkInsert(String index, List<T> sources) {
-		BulkRequest request = new BulkRequest();
-		sources.forEach(d -> {
-			try {
-				byte[] json = mapper.writeValueAsBytes(d);
-				request.add(new IndexRequest(index).id(esId(d)).source(json, XContentType.JSON));
-			} catch (JsonProcessingException e) {
-				throw new RuntimeException(e);
-			}
-		});
-		return exec(bulkOperator, request);
+		return bulk(insertRequest(index, sources));
+	}
+
+	/**
+	 * @param maxBytesPerRequest 超过该字节数时拆成多个批量请求并发发送，必须为正数
+	 * @throws PartialBulkException 部分请求整体失败，已成功的部分已写入
+	 */
+	public <T extends ElasticsearchId> BulkResponse bulkInsert(String index, List<T> sources, long maxBytesPerRequest) {
+		requirePositive(maxBytesPerRequest);
+		return bulk(insertRequest(index, sources), maxBytesPerRequest);
+	}
+
+	public <T extends ElasticsearchId> BulkResult<T> bulkInsertForResult(String index, List<T> sources) {
+		return BulkResult.of(bulkInsert(index, sources), sources);
 	}
 
 	public <T extends ElasticsearchId> Cancellable bulkInsertAsync(String index, T source) {
@@ -320,16 +791,122 @@ public class ElasticsearchTemplate {
 	}
 
 	public <T extends ElasticsearchId> Cancellable bulkInsertAsync(String index, List<T> sources) {
-		BulkRequest request = new BulkRequest();
-		sources.forEach(d -> {
-			try {
-				byte[] json = mapper.writeValueAsBytes(d);
-				request.add(new IndexRequest(index).id(esId(d)).source(json, XContentType.JSON));
-			} catch (JsonProcessingException e) {
-				throw new RuntimeException(e);
+		return exec(bulkAsyncOperator, insertRequest(index, sources));
+	}
+
+	public <T extends ElasticsearchId> CompletableFuture<BulkResponse> bulkInsertFuture(String index, T source) {
+		return bulkInsertFuture(index, List.of(source));
+	}
+
+	public <T extends ElasticsearchId> CompletableFuture<BulkResponse> bulkInsertFuture(String index, List<T> sources) {
+		return exec(bulkFutureOperator, insertRequest(index, sources));
+	}
+
+	public BulkIngester bulkIngester() {
+		return bulkIngester(new BulkIngesterOptions());
+	}
+
+	public BulkIngester bulkIngester(BulkIngesterOptions options) {
+		return new BulkIngester(this::bulk, codecs, options);
+	}
+
+	public <T extends ElasticsearchId> long bulkInsertStreaming(String index, Stream<T> sources,
+			long maxBytesPerRequest, boolean gzip, Consumer<BulkResponse> responseConsumer) {
+		try (Stream<T> s = sources) {
+			return bulkInsertStreaming(index, s.iterator(), maxBytesPerRequest, gzip, responseConsumer);
+		}
+	}
+
+	/**
+	 * 流式批量写入：边序列化边发送，不在内存中构造完整的批量请求，堆占用与批量大小无关。
+	 * 请求体不可重放：RestClient 在连接失败或 502/503/504 后换节点重发时，本次请求被取消，
+	 * 抛出的异常以第一个节点的原始异常为 cause，已发送的部分是否写入以服务端为准。连接串开启 compression 时 RestClient
+	 * 会先缓冲整个请求体再压缩，流式写入应关闭该选项，改用 gzip 参数。
+	 * <p>
+	 * sources 的遍历和文档的 Jackson 序列化在 Apache HttpAsyncClient 的 I/O 线程上进行，
+	 * 迭代器不能阻塞，也不能依赖调用线程的 ThreadLocal 等上下文
+	 *
+	 * @param maxBytesPerRequest 单个请求的原始字节数上限，达到后剩余文档用下一个请求继续发送
+	 * @param gzip               是否边发送边 gzip 压缩
+	 * @param responseConsumer   每个请求完成后的回调，可为null
+	 * @return 发送的文档数
+	 */
+	public <T extends ElasticsearchId> long bulkInsertStreaming(String index, Iterator<T> sources,
+			long maxBytesPerRequest, boolean gzip, Consumer<BulkResponse> responseConsumer) {
+		final byte[] action = actionPrefix("index", index);
+		return bulkStreaming(index, sources, (source, out) -> {
+			writeAction(out, action, esId(source));
+			codecs.writer(source.getClass()).writeValue(out, source);
+			out.write('\n');
+		}, maxBytesPerRequest, gzip, responseConsumer);
+	}
+
+	public <T extends ElasticsearchId> long bulkUpdateStreaming(String index, Stream<T> sources,
+			long maxBytesPerRequest, boolean gzip, Consumer<BulkResponse> responseConsumer) {
+		try (Stream<T> s = sources) {
+			return bulkUpdateStreaming(index, s.iterator(), maxBytesPerRequest, gzip, responseConsumer);
+		}
+	}
+
+	/**
+	 * 流式批量更新，参数同 {@link #bulkInsertStreaming(String, Iterator, long, boolean, Consumer)}
+	 */
+	public <T extends ElasticsearchId> long bulkUpdateStreaming(String index, Iterator<T> sources,
+			long maxBytesPerRequest, boolean gzip, Consumer<BulkResponse> responseConsumer) {
+		final byte[] action = actionPrefix("update", index);
+		return bulkStreaming(index, sources, (source, out) -> {
+			writeAction(out, action, esId(source));
+			out.write(DOC_PREFIX);
+			codecs.writer(source.getClass()).writeValue(out, source);
+			out.write(DOC_SUFFIX);
+		}, maxBytesPerRequest, gzip, responseConsumer);
+	}
+
+	private <T> long bulkStreaming(String index, Iterator<T> sources, NdjsonBulkBody.LineWriter<T> writer,
+			long maxBytesPerRequest, boolean gzip, Consumer<BulkResponse> responseConsumer) {
+		long limit = maxBytesPerRequest > 0 ? maxBytesPerRequest : Long.MAX_VALUE;
+		long actions = 0;
+		try {
+			while (sources.hasNext()) {
+				NdjsonBulkBody<T> body = new NdjsonBulkBody<>(sources, writer, limit, gzip);
+				OneShotEntity entity = new OneShotEntity(body, NDJSON);
+				if (gzip) {
+					entity.setContentEncoding("gzip");
+				}
+				Request request = new Request("POST", "/_bulk");
+				request.setEntity(entity);
+				Response response = performOnce(request, entity);
+				actions += body.getActions();
+				BulkResponse bulkResponse;
+				try (InputStream in = response.getEntity().getContent();
+						XContentParser parser = XContentType.JSON.xContent().createParser(NamedXContentRegistry.EMPTY,
+								DeprecationHandler.THROW_UNSUPPORTED_OPERATION, in)) {
+					bulkResponse = BulkResponse.fromXContent(parser);
+				}
+				invalidateDocuments(bulkResponse);
+				ClientMetrics m = metrics;
+				if (m != null) {
+					m.recordBulk(bulkResponse);
+				}
+				if (responseConsumer != null) {
+					responseConsumer.accept(bulkResponse);
+				}
 			}
-		});
-		return exec(bulkAsyncOperator, request);
+		} catch (IOException | RuntimeException e) {
+			invalidateIndices(index);
+			throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+		}
+		return actions;
+	}
+
+	private byte[] actionPrefix(String opType, String index) {
+		return ("{\"" + opType + "\":{\"_index\":" + quote(index) + ",\"_id\":").getBytes(StandardCharsets.UTF_8);
+	}
+
+	private void writeAction(OutputStream out, byte[] prefix, String id) throws IOException {
+		out.write(prefix);
+		out.write(quote(id).getBytes(StandardCharsets.UTF_8));
+		out.write(ACTION_SUFFIX);
 	}
 
 	public BulkResponse bulkDelete(String index, String... ids) {
@@ -337,11 +914,11 @@ public class ElasticsearchTemplate {
 	}
 
 	public BulkResponse bulkDelete(String index, List<String> ids) {
-		BulkRequest request = new BulkRequest();
-		ids.forEach(id -> {
-			request.add(new DeleteRequest(index, id));
-		});
-		return exec(bulkOperator, request);
+		return bulk(deleteRequest(index, ids));
+	}
+
+	public BulkResult<String> bulkDeleteForResult(String index, List<String> ids) {
+		return BulkResult.of(bulkDelete(index, ids), ids);
 	}
 
 	public Cancellable bulkDeleteAsync(String index, String... ids) {
@@ -349,44 +926,263 @@ public class ElasticsearchTemplate {
 	}
 
 	public Cancellable bulkDeleteAsync(String index, List<String> ids) {
-		BulkRequest request = new BulkRequest();
-		ids.forEach(id -> {
-			request.add(new DeleteRequest(index, id));
-		});
-		return exec(bulkAsyncOperator, request);
+		return exec(bulkAsyncOperator, deleteRequest(index, ids));
+	}
+
+	public CompletableFuture<BulkResponse> bulkDeleteFuture(String index, String... ids) {
+		return bulkDeleteFuture(index, List.of(ids));
+	}
+
+	public CompletableFuture<BulkResponse> bulkDeleteFuture(String index, List<String> ids) {
+		return exec(bulkFutureOperator, deleteRequest(index, ids));
 	}
 
 	public GetResponse findById(String index, String id) {
+		if (getCoalescer != null) {
+			return join(findByIdFuture(index, id));
+		}
 		return exec(operator, new GetRequest(index, id));
 	}
 
+	public CompletableFuture<GetResponse> findByIdFuture(String index, String id) {
+		final RequestCoalescer<DocumentKey, MultiGetItemResponse> coalescer = getCoalescer;
+		if (coalescer == null) {
+			return execAsync(operator, new GetRequest(index, id));
+		}
+		return coalescer.submit(new DocumentKey(index, id)).thenApply(ElasticsearchTemplate::getResponse);
+	}
+
+	/**
+	 * 用一次 _mget 按 id 批量查询，返回的 Map 按 ids 的顺序，不存在的文档不在其中
+	 */
+	public <T extends ElasticsearchId> Map<String, T> findByIds(String index, Collection<String> ids,
+			Class<T> clazz) {
+		final DocumentCache cache = documentCache;
+		Map<String, T> result = new LinkedHashMap<>();
+		MultiGetRequest request = new MultiGetRequest();
+		for (String id : ids) {
+			CachedDocument cached = cache == null ? null : cache.get(index, id);
+			if (cached != null && cached.hasSource()) {
+				if (cached.isFound()) {
+					result.put(id, readCached(cached, clazz));
+				}
+			} else if (!result.containsKey(id)) {
+				result.put(id, null);
+				request.add(index, id);
+			}
+		}
+		if (!request.getItems().isEmpty()) {
+			long stamp = cache == null ? 0L : cache.stamp(index);
+			for (MultiGetItemResponse item : exec(multiGetOperator, request)) {
+				GetResponse response = getResponse(item);
+				T value = readSource(response, clazz);
+				if (cache != null) {
+					fill(cache, index, item.getId(), stamp, response);
+				}
+				result.put(item.getId(), value);
+			}
+		}
+		result.values().removeIf(Objects::isNull);
+		return result;
+	}
+
+	/**
+	 * 开启单个 findById 的请求合并：window 内的并发请求合并为一次 _mget，window 为null时关闭。
+	 * 合并后的 _mget 经由异步执行器发送，同步 findById 的熔断、重试等策略由构造时传入的 AsyncExecutor 决定；
+	 * 只自定义了同步执行器时抛出 IllegalStateException
+	 *
+	 * @param maxBatchSize 单次 _mget 最多的文档数
+	 */
+	public void setFindByIdCoalescing(Duration window, int maxBatchSize) {
+		if (window == null) {
+			this.getCoalescer = null;
+			return;
+		}
+		requireAsyncExecutor("findById coalescing");
+		this.getCoalescer = new RequestCoalescer<>(keys -> {
+			MultiGetRequest request = new MultiGetRequest();
+			keys.forEach(k -> request.add(k.index, k.id));
+			return execAsync(multiGetOperator, request).thenApply(response -> {
+				Map<DocumentKey, MultiGetItemResponse> items = new HashMap<>();
+				MultiGetItemResponse[] responses = response.getResponses();
+				for (int i = 0; i < responses.length; i++) {
+					items.put(keys.get(i), responses[i]);
+				}
+				return items;
+			});
+		}, window, maxBatchSize, DefaultAsyncExecutorImpl.sharedScheduler());
+	}
+
+	private static GetResponse getResponse(MultiGetItemResponse item) {
+		if (item.isFailed()) {
+			Exception e = item.getFailure().getFailure();
+			throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+		}
+		return item.getResponse();
+	}
+
+	/**
+	 * 可中断地等待，future 可能被多个调用方共享，中断时不取消
+	 */
+	private static <V> V join(CompletableFuture<V> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+					: new RuntimeException(e.getCause());
+		}
+	}
+
 	public <T extends ElasticsearchId> T findById(String index, String id, Class<T> clazz) {
+		final DocumentCache cache = documentCache;
+		if (cache == null) {
+			return readSource(findById(index, id), clazz);
+		}
+		CachedDocument cached = cache.get(index, id);
+		if (cached != null && cached.hasSource()) {
+			return readCached(cached, clazz);
+		}
+		long stamp = cache.stamp(index);
 		GetResponse response = findById(index, id);
+		fill(cache, index, id, stamp, response);
+		return readSource(response, clazz);
+	}
+
+	/**
+	 * 缓存的是 _source 字节的副本，不引用整个响应的缓冲区
+	 */
+	private void fill(DocumentCache cache, String index, String id, long stamp, GetResponse response) {
+		boolean found = response != null && response.isExists();
+		byte[] source = found && !response.isSourceEmpty() ? BytesReference.toBytes(response.getSourceAsBytesRef())
+				: new byte[0];
+		cache.fill(index, id, stamp, new CachedDocument(found, source, found ? response.getSeqNo() : -1L,
+				found ? response.getPrimaryTerm() : 0L));
+	}
+
+	/**
+	 * 每次命中都反序列化出新对象，调用方可以随意修改
+	 */
+	private <T> T readCached(CachedDocument cached, Class<T> clazz) {
+		byte[] source = cached.getSource();
+		if (!cached.isFound() || source.length == 0) {
+			return null;
+		}
+		try {
+			return codecs.read(source, 0, source.length, clazz);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private <T> T readSource(GetResponse response, Class<T> clazz) {
 		try {
-			if (response == null || org.elasticsearch.common.Strings.isNullOrEmpty(response.getSourceAsString())) {
+			if (response == null || response.isSourceEmpty()) {
 				return null;
 			}
-			return mapper.readValue(response.getSourceAsString(), clazz);
+			return readSource(response.getSourceAsBytesRef(), clazz);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	/**
+	 * 开启 findById/exists 文档缓存，null表示关闭。通过本模板的写入、更新、删除会自动使缓存失效
+	 */
+	public void setDocumentCache(DocumentCache documentCache) {
+		this.documentCache = documentCache;
+	}
+
+	public DocumentCache getDocumentCache() {
+		return documentCache;
+	}
+
+	/**
+	 * 写入完成（含失败）后使文档缓存和查询缓存失效
+	 */
+	private void invalidateDocument(String index, String id) {
+		DocumentCache cache = documentCache;
+		if (cache != null && index != null && id != null) {
+			cache.invalidate(index, id);
+		}
+		QueryCache queries = queryCache;
+		if (queries != null && index != null) {
+			queries.invalidateIndices(index);
+		}
+	}
+
+	private void invalidateDocuments(BulkRequest request) {
+		DocumentCache cache = documentCache;
+		QueryCache queries = queryCache;
+		if (cache == null && queries == null) {
+			return;
+		}
+		Set<String> indices = new HashSet<>();
+		for (DocWriteRequest<?> r : request.requests()) {
+			if (cache != null && r.index() != null && r.id() != null) {
+				cache.invalidate(r.index(), r.id());
+			}
+			if (r.index() != null) {
+				indices.add(r.index());
+			}
+		}
+		if (queries != null && !indices.isEmpty()) {
+			queries.invalidateIndices(indices.toArray(new String[0]));
+		}
+	}
+
+	private void invalidateDocuments(BulkResponse response) {
+		DocumentCache cache = documentCache;
+		QueryCache queries = queryCache;
+		if (cache == null && queries == null) {
+			return;
+		}
+		Set<String> indices = new HashSet<>();
+		for (BulkItemResponse item : response) {
+			if (cache != null && item.getIndex() != null && item.getId() != null) {
+				cache.invalidate(item.getIndex(), item.getId());
+			}
+			if (item.getIndex() != null) {
+				indices.add(item.getIndex());
+			}
+		}
+		if (queries != null && !indices.isEmpty()) {
+			queries.invalidateIndices(indices.toArray(new String[0]));
+		}
+	}
+
+	private void invalidateIndices(String... indices) {
+		DocumentCache cache = documentCache;
+		if (cache != null) {
+			cache.invalidateIndices(indices);
+		}
+		QueryCache queries = queryCache;
+		if (queries != null) {
+			queries.invalidateIndices(indices);
+		}
+	}
+
 	public <T extends ElasticsearchId> BulkResponse bulkUpdate(String index, T source) {
 		return bulkUpdate(index, List.of(source));
 	}
 
 	public <T extends ElasticsearchId> BulkResponse bulkUpdate(String index, List<T> sources) {
-		BulkRequest request = new BulkRequest();
-		sources.forEach(d -> {
-			try {
-				byte[] json = mapper.writeValueAsBytes(d);
-				request.add(new UpdateRequest(index, esId(d)).doc(json, XContentType.JSON));
-			} catch (JsonProcessingException e) {
-				throw new RuntimeException(e);
-			}
-		});
-		return exec(bulkOperator, request);
+		return bulk(updateRequest(index, sources));
+	}
+
+	/**
+	 * @param maxBytesPerRequest 超过该字节数时拆成多个批量请求并发发送，必须为正数
+	 * @throws PartialBulkException 部分请求整体失败，已成功的部分已写入
+	 */
+	public <T extends ElasticsearchId> BulkResponse bulkUpdate(String index, List<T> sources, long maxBytesPerRequest) {
+		requirePositive(maxBytesPerRequest);
+		return bulk(updateRequest(index, sources), maxBytesPerRequest);
+	}
+
+	public <T extends ElasticsearchId> BulkResult<T> bulkUpdateForResult(String index, List<T> sources) {
+		return BulkResult.of(bulkUpdate(index, sources), sources);
 	}
 
 	public <T extends ElasticsearchId> Cancellable bulkUpdateAsync(String index, T source) {
@@ -394,45 +1190,378 @@ public class ElasticsearchTemplate {
 	}
 
 	public <T extends ElasticsearchId> Cancellable bulkUpdateAsync(String index, List<T> sources) {
-		BulkRequest request = new BulkRequest();
-		sources.forEach(d -> {
+		return exec(bulkAsyncOperator, updateRequest(index, sources));
+	}
+
+	public <T extends ElasticsearchId> CompletableFuture<BulkResponse> bulkUpdateFuture(String index, T source) {
+		return bulkUpdateFuture(index, List.of(source));
+	}
+
+	public <T extends ElasticsearchId> CompletableFuture<BulkResponse> bulkUpdateFuture(String index, List<T> sources) {
+		return exec(bulkFutureOperator, updateRequest(index, sources));
+	}
+
+	/**
+	 * 发送批量请求，429/503 失败的条目按退避策略单独重发
+	 */
+	public BulkResponse bulk(BulkRequest request) {
+		return bulkRetry.send(request);
+	}
+
+	public void setBulkBackoffPolicy(BackoffPolicy backoffPolicy) {
+		this.bulkRetry = new BulkRetry(request -> exec(bulkOperator, request), backoffPolicy);
+	}
+
+	/**
+	 * 按字节数拆成多个批量请求并发发送，结果按原顺序合并。有部分失败时等待其余部分完成，
+	 * 再抛出带已完成响应的 {@link PartialBulkException}。只自定义了同步执行器时，各部分经它依次发送
+	 */
+	private BulkResponse bulk(BulkRequest request, long maxBytesPerRequest) {
+		List<BulkRequest> parts = BulkResponses.partition(request, maxBytesPerRequest);
+		if (parts.size() <= 1) {
+			return bulk(request);
+		}
+		List<CompletableFuture<BulkResponse>> futures = new ArrayList<>(parts.size());
+		for (BulkRequest part : parts) {
 			try {
-				byte[] json = mapper.writeValueAsBytes(d);
-				request.add(new UpdateRequest(index, esId(d)).doc(json, XContentType.JSON));
-			} catch (JsonProcessingException e) {
-				throw new RuntimeException(e);
+				futures.add(asyncMatchesExecutor ? exec(bulkFutureOperator, part)
+						: CompletableFuture.completedFuture(exec(bulkOperator, part)));
+			} catch (RuntimeException e) {
+				futures.add(CompletableFuture.failedFuture(e));
 			}
+		}
+		List<BulkResponse> responses = new ArrayList<>(parts.size());
+		List<BulkRequest> failed = new ArrayList<>();
+		RuntimeException failure = null;
+		for (int i = 0; i < parts.size(); i++) {
+			try {
+				responses.add(bulkRetry.retry(parts.get(i), join(futures.get(i))));
+			} catch (RuntimeException e) {
+				failed.add(parts.get(i));
+				if (failure == null) {
+					failure = e;
+				} else {
+					failure.addSuppressed(e);
+				}
+			}
+		}
+		if (failure != null) {
+			throw new PartialBulkException(
+					failed.size() + " of " + parts.size() + " bulk requests failed, the others were written",
+					BulkResponses.concat(responses), failed, failure);
+		}
+		return BulkResponses.concat(responses);
+	}
+
+	private static void requirePositive(long maxBytesPerRequest) {
+		if (maxBytesPerRequest <= 0) {
+			throw new IllegalArgumentException("maxBytesPerRequest must be positive: " + maxBytesPerRequest);
+		}
+	}
+
+	/**
+	 * 大批量文档的并行序列化，executor 为null时始终在调用线程中序列化
+	 *
+	 * @param parallelThreshold 文档数不少于该值时并行
+	 * @param parallelism       并行度
+	 */
+	public void setBulkSerialization(java.util.concurrent.Executor executor, int parallelThreshold,
+			int parallelism) {
+		this.bulkSerializer = new BulkSerializer(codecs, executor, parallelThreshold, parallelism);
+	}
+
+	private byte[][] serialize(List<?> sources) {
+		final ClientMetrics m = metrics;
+		if (m == null) {
+			return bulkSerializer.serialize(sources);
+		}
+		long start = System.nanoTime();
+		byte[][] jsons = bulkSerializer.serialize(sources);
+		long bytes = 0;
+		for (byte[] json : jsons) {
+			bytes += json.length;
+		}
+		m.recordSerialization(System.nanoTime() - start, bytes);
+		return jsons;
+	}
+
+	private <T extends ElasticsearchId> BulkRequest insertRequest(String index, List<T> sources) {
+		byte[][] jsons = serialize(sources);
+		BulkRequest request = new BulkRequest();
+		Iterator<T> it = sources.iterator();
+		for (int i = 0; i < jsons.length; i++) {
+			request.add(new IndexRequest(index).id(esId(it.next())).source(jsons[i], XContentType.JSON));
+		}
+		return request;
+	}
+
+	private <T extends ElasticsearchId> BulkRequest updateRequest(String index, List<T> sources) {
+		byte[][] jsons = serialize(sources);
+		BulkRequest request = new BulkRequest();
+		Iterator<T> it = sources.iterator();
+		for (int i = 0; i < jsons.length; i++) {
+			request.add(new UpdateRequest(index, esId(it.next())).doc(jsons[i], XContentType.JSON));
+		}
+		return request;
+	}
+
+	private BulkRequest deleteRequest(String index, List<String> ids) {
+		BulkRequest request = new BulkRequest();
+		ids.forEach(id -> {
+			request.add(new DeleteRequest(index, id));
 		});
-		return exec(bulkAsyncOperator, request);
+		return request;
 	}
 
 	public SearchResponse search(SearchSourceBuilder searchSourceBuilder, String... indices) {
-		return search(searchSourceBuilder, "1m", indices);
+		return search(searchSourceBuilder, null, indices);
 	}
 
 	public <T extends ElasticsearchId> List<T> search(SearchSourceBuilder searchSourceBuilder, String[] indices,
 			Class<T> clazz) {
-		SearchResponse response = search(searchSourceBuilder, "1m", indices);
-		List<T> rs = new ArrayList<>();
+		final QueryCache cache = queryCache;
+		if (cache == null) {
+			return readHits(searchOnce(searchSourceBuilder, null, indices), clazz);
+		}
+		String source = searchSourceBuilder.toString();
+		byte[][] sources = cache.get(QueryCache.key("search", source, indices, null), () -> {
+			SearchHit[] hits = searchOnce(searchSourceBuilder, null, indices).getHits().getHits();
+			byte[][] bytes = new byte[hits.length][];
+			long weight = 1024L + source.length();
+			for (int i = 0; i < hits.length; i++) {
+				BytesReference ref = hits[i].getSourceRef();
+				bytes[i] = ref == null ? null : BytesReference.toBytes(ref);
+				weight += 128L + (ref == null ? 0 : ref.length());
+			}
+			return new QueryCache.Weighted<>(bytes, weight);
+		});
+		return readSources(sources, clazz);
+	}
+
+	/**
+	 * 缓存的是 _source 字节，每次命中都反序列化出新对象
+	 */
+	private <T> List<T> readSources(byte[][] sources, Class<T> clazz) {
+		final ClientMetrics m = metrics;
+		long start = m == null ? 0L : System.nanoTime();
+		List<T> rs = new ArrayList<>(sources.length);
+		for (byte[] source : sources) {
+			try {
+				rs.add(source == null ? null : codecs.read(source, 0, source.length, clazz));
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		if (m != null) {
+			m.recordDeserialization(System.nanoTime() - start);
+		}
+		return rs;
+	}
+
+	private <T> List<T> readHits(SearchResponse response, Class<T> clazz) {
+		final ClientMetrics m = metrics;
+		long start = m == null ? 0L : System.nanoTime();
 		SearchHit[] hits = response.getHits().getHits();
+		List<T> rs = new ArrayList<>(hits.length);
 		for (SearchHit h : hits) {
 			try {
-				rs.add(mapper.readValue(h.getSourceAsString(), clazz));
+				rs.add(readSource(h.getSourceRef(), clazz));
 			} catch (IOException e) {
 				throw new RuntimeException(e);
 			}
 		}
+		if (m != null) {
+			m.recordDeserialization(System.nanoTime() - start);
+		}
 		return rs;
 	}
 
+	/**
+	 * 用一次 _msearch 执行多个互不相关的查询，结果与 queries 顺序相同，单个查询失败不影响其它查询
+	 */
+	public MultiSearchResult multiSearch(List<SearchQuery<?>> queries) {
+		MultiSearchRequest request = new MultiSearchRequest();
+		for (SearchQuery<?> q : queries) {
+			request.add(new SearchRequest(q.getIndices()).source(q.getSource()));
+		}
+		MultiSearchResponse.Item[] items = exec(multiSearchOperator, request).getResponses();
+		List<SearchResult<?>> results = new ArrayList<>(items.length);
+		for (int i = 0; i < items.length; i++) {
+			results.add(searchResult(items[i], queries.get(i).getClazz()));
+		}
+		return new MultiSearchResult(List.copyOf(queries), results);
+	}
+
+	private <T> SearchResult<T> searchResult(MultiSearchResponse.Item item, Class<T> clazz) {
+		if (item.isFailure()) {
+			return SearchResult.failed(item.getFailure());
+		}
+		SearchResponse response = item.getResponse();
+		TotalHits totalHits = response.getHits().getTotalHits();
+		try {
+			return SearchResult.of(readHits(response, clazz), totalHits == null ? -1L : totalHits.value);
+		} catch (RuntimeException e) {
+			return SearchResult.failed(e);
+		}
+	}
+
+	/**
+	 * 开启普通查询的请求合并：window 内的并发 search/searchFuture 合并为一次 _msearch，window 为null时关闭。
+	 * 开启 scroll 的查询不合并。与 {@link #setFindByIdCoalescing(Duration, int)} 一样经由异步执行器发送
+	 *
+	 * @param maxBatchSize 单次 _msearch 最多的查询数
+	 */
+	public void setSearchCoalescing(Duration window, int maxBatchSize) {
+		if (window == null) {
+			this.searchCoalescer = null;
+			return;
+		}
+		requireAsyncExecutor("search coalescing");
+		this.searchCoalescer = new RequestCoalescer<>(pending -> {
+			MultiSearchRequest request = new MultiSearchRequest();
+			pending.forEach(p -> request.add(p.request));
+			return execAsync(multiSearchOperator, request).thenApply(response -> {
+				Map<PendingSearch, MultiSearchResponse.Item> items = new HashMap<>();
+				MultiSearchResponse.Item[] responses = response.getResponses();
+				for (int i = 0; i < responses.length; i++) {
+					items.put(pending.get(i), responses[i]);
+				}
+				return items;
+			});
+		}, window, maxBatchSize, DefaultAsyncExecutorImpl.sharedScheduler());
+	}
+
+	private static SearchResponse searchResponse(MultiSearchResponse.Item item) {
+		if (item.isFailure()) {
+			Exception e = item.getFailure();
+			throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+		}
+		return item.getResponse();
+	}
+
+	/**
+	 * @param keepAlive 不为null时开启 scroll，使用完毕须调用 {@link #clearScroll(String...)}
+	 */
 	public SearchResponse search(SearchSourceBuilder searchSourceBuilder, String keepAlive, String[] indices) {
+		final QueryCache cache = queryCache;
+		if (keepAlive != null || cache == null || !SearchResponseCodec.isAvailable()) {
+			return searchOnce(searchSourceBuilder, keepAlive, indices);
+		}
+		String source = searchSourceBuilder.toString();
+		byte[] json = cache.get(QueryCache.key("response", source, indices, null), () -> {
+			byte[] bytes = SearchResponseCodec.write(searchOnce(searchSourceBuilder, null, indices));
+			return new QueryCache.Weighted<>(bytes, 1024L + source.length() + bytes.length);
+		});
+		return SearchResponseCodec.read(json);
+	}
+
+	private SearchResponse searchOnce(SearchSourceBuilder searchSourceBuilder, String keepAlive, String[] indices) {
 		SearchRequest request = new SearchRequest(indices);
 		request.source(searchSourceBuilder);
-		if (keepAlive == null) {
-			keepAlive = "1m";
+		if (keepAlive != null) {
+			request.scroll(keepAlive);
+		} else if (searchCoalescer != null) {
+			return join(searchFuture(request));
+		}
+		SearchResponse response = exec(searchOperator, request);
+		scrollTracker.onOpen(response.getScrollId(), keepAliveOf(keepAlive));
+		return response;
+	}
+
+	public CompletableFuture<SearchResponse> searchFuture(SearchSourceBuilder searchSourceBuilder, String... indices) {
+		return searchFuture(new SearchRequest(indices).source(searchSourceBuilder));
+	}
+
+	private CompletableFuture<SearchResponse> searchFuture(SearchRequest request) {
+		final RequestCoalescer<PendingSearch, MultiSearchResponse.Item> coalescer = searchCoalescer;
+		if (coalescer == null) {
+			return execAsync(searchOperator, request);
 		}
-		request.scroll(keepAlive);
-		return exec(searchOperator, request);
+		return coalescer.submit(new PendingSearch(request)).thenApply(ElasticsearchTemplate::searchResponse);
+	}
+
+	public <T extends ElasticsearchId> Stream<T> stream(SearchSourceBuilder searchSourceBuilder, String[] indices,
+			Class<T> clazz) {
+		return scroll(searchSourceBuilder, "1m", indices, clazz).stream();
+	}
+
+	/**
+	 * 惰性遍历全部结果，每批大小由 searchSourceBuilder 的 size 决定。使用完毕须关闭 Stream。
+	 */
+	public <T extends ElasticsearchId> Stream<T> stream(SearchSourceBuilder searchSourceBuilder, String keepAlive,
+			String[] indices, Class<T> clazz) {
+		return scroll(searchSourceBuilder, keepAlive, indices, clazz).stream();
+	}
+
+	public <T extends ElasticsearchId> ScrollIterator<T> scroll(SearchSourceBuilder searchSourceBuilder,
+			String keepAlive, String[] indices, Class<T> clazz) {
+		final String ka = keepAlive == null ? "1m" : keepAlive;
+		SearchResponse first = search(searchSourceBuilder, ka, indices);
+		return new ScrollIterator<>(first,
+				scrollId -> execAsync(searchScrollOperator, new SearchScrollRequest(scrollId).scroll(ka))
+						.thenApply(r -> {
+							scrollTracker.onScroll(scrollId, r.getScrollId(), keepAliveOf(ka));
+							return r;
+						}),
+				this::clearScroll, hit -> {
+					try {
+						return readSource(hit.getSourceRef(), clazz);
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+				});
+	}
+
+	public <T extends ElasticsearchId> ExportResult exportSliced(SearchSourceBuilder searchSourceBuilder,
+			String[] indices, int slices, Class<T> clazz, Consumer<? super T> consumer) {
+		ExecutorService pool = Executors.newFixedThreadPool(slices);
+		try {
+			return exportSliced(searchSourceBuilder, "1m", indices, slices, clazz, consumer, new SliceListener() {
+			}, pool);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * 拆成 slices 个 sliced scroll 在 executor 上并行导出，consumer 会被并发调用
+	 */
+	public <T extends ElasticsearchId> ExportResult exportSliced(SearchSourceBuilder searchSourceBuilder,
+			String keepAlive, String[] indices, int slices, Class<T> clazz, Consumer<? super T> consumer,
+			SliceListener listener, java.util.concurrent.Executor executor) {
+		return slicedExporter(searchSourceBuilder, keepAlive, indices, slices, clazz).export(consumer, listener,
+				executor);
+	}
+
+	/**
+	 * 合并所有分片的并行 Stream，使用完毕须关闭 Stream
+	 */
+	public <T extends ElasticsearchId> Stream<T> streamSliced(SearchSourceBuilder searchSourceBuilder,
+			String keepAlive, String[] indices, int slices, Class<T> clazz) {
+		return slicedExporter(searchSourceBuilder, keepAlive, indices, slices, clazz).stream();
+	}
+
+	private <T extends ElasticsearchId> SlicedScrollExporter<T> slicedExporter(
+			SearchSourceBuilder searchSourceBuilder, String keepAlive, String[] indices, int slices, Class<T> clazz) {
+		final int batchSize = searchSourceBuilder.size() > 0 ? searchSourceBuilder.size() : 10;
+		return new SlicedScrollExporter<>(slice -> {
+			SearchSourceBuilder s = searchSourceBuilder.shallowCopy();
+			if (slices > 1) {
+				s.slice(new SliceBuilder(slice, slices));
+			}
+			return scroll(s, keepAlive, indices, clazz);
+		}, slices, batchSize);
+	}
+
+	/**
+	 * 通过模板打开和清除的 scroll 统计，用于发现未清除的 scroll
+	 */
+	public ScrollTracker getScrollTracker() {
+		return scrollTracker;
+	}
+
+	private static Duration keepAliveOf(String keepAlive) {
+		return keepAlive == null ? null : Duration.ofNanos(TimeValue.parseTimeValue(keepAlive, "scroll").nanos());
 	}
 
 	public SearchResponse searchScroll(String scrollId) {
@@ -444,7 +1573,9 @@ public class ElasticsearchTemplate {
 		if (keepAlive != null) {
 			request.scroll(keepAlive);
 		}
-		return exec(searchScrollOperator, request);
+		SearchResponse response = exec(searchScrollOperator, request);
+		scrollTracker.onScroll(scrollId, response.getScrollId(), keepAliveOf(keepAlive));
+		return response;
 	}
 
 	public ClearScrollResponse clearScroll(String... scrollId) {
@@ -454,7 +1585,24 @@ public class ElasticsearchTemplate {
 	public ClearScrollResponse clearScroll(List<String> scrollIds) {
 		ClearScrollRequest request = new ClearScrollRequest();
 		request.scrollIds(scrollIds);
-		return exec(clearScrollOperator, request);
+		ClearScrollResponse response = exec(clearScrollOperator, request);
+		scrollTracker.onClear(scrollIds);
+		return response;
+	}
+
+	/**
+	 * 直接从响应字节解析，不经过中间 String
+	 */
+	private <T> T readSource(BytesReference source, Class<T> clazz) throws IOException {
+		if (source == null) {
+			return null;
+		}
+		if (source.hasArray()) {
+			return codecs.read(source.array(), source.arrayOffset(), source.length(), clazz);
+		}
+		try (InputStream in = source.streamInput()) {
+			return codecs.read(in, clazz);
+		}
 	}
 
 	private <T extends ElasticsearchId> String esId(T source) {
@@ -472,68 +1620,240 @@ public class ElasticsearchTemplate {
 				clazz);
 	}
 
+	/**
+	 * 旧接口不返回游标，取完本页后立即关闭 point in time，不在服务端留下上下文
+	 */
 	public <T extends ElasticsearchId> Page<T> searchScrollDeepPaging(SearchSourceBuilder searchSourceBuilder,
 			final int pageNumber, final int pageSize, String[] indices, String keepAlive, Class<T> clazz) {
+		Page<T> page = searchAfterDeepPaging(searchSourceBuilder, pageNumber, pageSize, null, indices, keepAlive,
+				clazz);
+		if (page.getCursor() != null) {
+			closePointInTime(PageCursor.decode(page.getCursor()).getPit());
+			page.setCursor(null);
+		}
+		return page;
+	}
 
-		// fetch
-		final FetchSourceContext fetch = searchSourceBuilder.fetchSource();
-		final List<SortBuilder<?>> sorts = searchSourceBuilder.sorts();
-
-		searchSourceBuilder.fetchSource(false).from(0).size(pageSize);// scroll from=0
-		SearchResponse response = search(searchSourceBuilder, keepAlive, indices);
+	public <T extends ElasticsearchId> Page<T> searchAfterDeepPaging(SearchSourceBuilder searchSourceBuilder,
+			int pageNumber, int pageSize, String cursor, String index, Class<T> clazz) {
+		return searchAfterDeepPaging(searchSourceBuilder, pageNumber, pageSize, cursor, new String[] { index }, "1m",
+				clazz);
+	}
 
-		final long total = response.getHits().getTotalHits().value;
-		List<String> esIds = new LinkedList<>();
-		String scrollId = null;
+	/**
+	 * point in time + search_after 深分页。带上一页返回的 {@link Page#getCursor()} 时只需一次请求；
+	 * 没有游标时跳页，窗口内直接 from/size；超出窗口时以 from=0 加 search_after 每次前进最多
+	 * {@value #MAX_RESULT_WINDOW} 条且只取排序值（Elasticsearch 不允许 search_after 与非零 from 同时使用）。
+	 * 游标页码与请求页码不一致时，先关闭游标中的 point in time。
+	 */
+	public <T extends ElasticsearchId> Page<T> searchAfterDeepPaging(SearchSourceBuilder searchSourceBuilder,
+			final int pageNumber, final int pageSize, String cursor, String[] indices, String keepAlive,
+			Class<T> clazz) {
+		final TimeValue ttl = TimeValue.parseTimeValue(keepAlive == null ? "1m" : keepAlive, "keep_alive");
+		final PageBoundaryCache boundaries = pageBoundaryCache;
+		final String boundaryKey = boundaries != null && boundaries.supports(searchSourceBuilder.sorts())
+				? PageBoundaryCache.key(sortKeySource(searchSourceBuilder).toString(), indices, pageSize)
+				: null;
+
+		if (cursor != null) {
+			PageCursor c = PageCursor.decode(cursor);
+			if (c.getPage() == pageNumber) {
+				try {
+					return fetchPage(searchSourceBuilder, c.getPit(), c.getAfter(), 0, pageNumber, pageSize, ttl,
+							boundaryKey, clazz);
+				} catch (ElasticsearchStatusException e) {
+					if (e.status() != RestStatus.NOT_FOUND) {
+						throw e;
+					}
+					// point in time expired, jump from the beginning
+				}
+			} else {
+				closePointInTime(c.getPit());
+			}
+		}
 
-		loop: for (int i = 0; i < pageNumber; i++) {
+		String pit = openPointInTime(indices, ttl);
+		long skip = (long) (pageNumber - 1) * pageSize;
+		long consumed = 0;
+		Object[] after = null;
+		if (boundaryKey != null && pageNumber > 1) {
+			Map.Entry<Integer, Object[]> nearest = boundaries.floor(boundaryKey, pageNumber - 1);
+			if (nearest != null) {
+				after = nearest.getValue();
+				consumed = (long) nearest.getKey() * pageSize;
+				skip -= consumed;
+			}
+		}
+		if (after == null && skip + pageSize <= MAX_RESULT_WINDOW) {
+			return fetchPage(searchSourceBuilder, pit, null, (int) skip, pageNumber, pageSize, ttl, boundaryKey,
+					clazz);
+		}
+		// search_after requires from=0, so walk forward by whole windows and keep the last sort values
+		while (skip > 0) {
+			final int step = (int) Math.min(skip, MAX_RESULT_WINDOW);
+			SearchSourceBuilder s = sortKeySource(searchSourceBuilder).from(0).size(step)
+					.pointInTimeBuilder(new PointInTimeBuilder(pit).setKeepAlive(ttl));
+			if (after != null) {
+				s.searchAfter(after);
+			}
+			SearchResponse response = exec(searchOperator, new SearchRequest().source(s));
+			if (response.pointInTimeId() != null) {
+				pit = response.pointInTimeId();
+			}
 			SearchHit[] hits = response.getHits().getHits();
-			if (hits == null || hits.length == 0) {
-				break loop;
+			if (hits == null || hits.length < step) {// beyond the last page
+				return fetchPage(searchSourceBuilder, pit, after, 0, pageNumber, 0, ttl, null, clazz)
+						.setPageSize(pageSize);
 			}
-			if (i == (pageNumber - 1)) {
-				for (SearchHit hit : hits) {
-					esIds.add(hit.getId());
-				}
-				break loop;
+			after = hits[hits.length - 1].getSortValues();
+			skip -= step;
+			consumed += step;
+			if (boundaryKey != null && consumed % pageSize == 0) {
+				boundaries.put(boundaryKey, (int) (consumed / pageSize), after, searchSourceBuilder.sorts().size());
 			}
-			scrollId = response.getScrollId();
-			response = searchScroll(response.getScrollId(), keepAlive);
 		}
+		return fetchPage(searchSourceBuilder, pit, after, 0, pageNumber, pageSize, ttl, boundaryKey, clazz);
+	}
+
+	private <T extends ElasticsearchId> Page<T> fetchPage(SearchSourceBuilder searchSourceBuilder, String pit,
+			Object[] after, int from, int pageNumber, int pageSize, TimeValue ttl, String boundaryKey,
+			Class<T> clazz) {
+		SearchSourceBuilder s = searchSourceBuilder.shallowCopy().from(from).size(pageSize)
+				.pointInTimeBuilder(new PointInTimeBuilder(pit).setKeepAlive(ttl));
+		if (after != null) {
+			s.searchAfter(after);
+		}
+		SearchResponse response = exec(searchOperator, new SearchRequest().source(s));
+		final String nextPit = response.pointInTimeId() != null ? response.pointInTimeId() : pit;
+		final long total = response.getHits().getTotalHits() != null ? response.getHits().getTotalHits().value : 0L;
 
-		if (scrollId != null) {
-			clearScroll(scrollId);
+		SearchHit[] hits = response.getHits().getHits();
+		List<T> tss = new ArrayList<>(hits.length);
+		for (SearchHit hit : hits) {
+			try {
+				tss.add(readSource(hit.getSourceRef(), clazz));
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
 		}
 
-		List<T> tss = (!esIds.isEmpty()) ? getIds(esIds, fetch, sorts, keepAlive, indices, clazz) : new ArrayList<>();
-		return new Page<T>().setList(tss).setPageNumber(pageNumber).setPageSize(pageSize).setTotal(total);
+		String cursor = null;
+		if (pageSize > 0 && hits.length == pageSize) {
+			Object[] last = hits[hits.length - 1].getSortValues();
+			cursor = new PageCursor(nextPit, pageNumber + 1, last).encode();
+			PageBoundaryCache boundaries = pageBoundaryCache;
+			if (boundaryKey != null && boundaries != null) {
+				boundaries.put(boundaryKey, pageNumber, last, searchSourceBuilder.sorts().size());
+			}
+		} else {
+			closePointInTime(nextPit);
+		}
+		return new Page<T>().setList(tss).setPageNumber(pageNumber).setPageSize(pageSize).setTotal(total)
+				.setCursor(cursor);
+	}
+
+	/**
+	 * 跳页时只需要排序值，去掉聚合、高亮和 _source
+	 */
+	private SearchSourceBuilder sortKeySource(SearchSourceBuilder searchSourceBuilder) {
+		SearchSourceBuilder s = new SearchSourceBuilder().query(searchSourceBuilder.query())
+				.postFilter(searchSourceBuilder.postFilter()).fetchSource(false).trackTotalHits(false);
+		if (searchSourceBuilder.minScore() != null) {
+			s.minScore(searchSourceBuilder.minScore());
+		}
+		if (searchSourceBuilder.sorts() != null) {
+			searchSourceBuilder.sorts().forEach(s::sort);
+		}
+		return s;
 	}
 
-	private <T extends ElasticsearchId> List<T> getIds(List<String> esIds, FetchSourceContext fetch,
-			List<SortBuilder<?>> sorts, String keepAlive, String[] indices, Class<T> clazz) {
+	/**
+	 * 开启深分页页边界缓存，null表示关闭。只对以唯一字段结尾的排序生效，见 {@link PageBoundaryCache#supports(List)}
+	 */
+	public void setPageBoundaryCache(PageBoundaryCache pageBoundaryCache) {
+		this.pageBoundaryCache = pageBoundaryCache;
+	}
 
-		SearchSourceBuilder s = new SearchSourceBuilder();
-		BoolQueryBuilder b = new BoolQueryBuilder();
-		final int size = esIds.size();
+	public PageBoundaryCache getPageBoundaryCache() {
+		return pageBoundaryCache;
+	}
 
-		s.fetchSource(fetch).size(size);
-		sorts.forEach(s::sort);
-		s.query(b.filter(QueryBuilders.idsQuery().addIds(esIds.toArray(new String[size]))));
+	public String openPointInTime(String[] indices, TimeValue keepAlive) {
+		Request request = new Request("POST", "/" + String.join(",", indices) + "/_pit");
+		request.addParameter("keep_alive", keepAlive.getStringRep());
+		Response response = exec(lowLevelOperator, request);
+		try (InputStream in = response.getEntity().getContent()) {
+			return mapper.readTree(in).get("id").asText();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
 
-		SearchResponse response = search(s, keepAlive, indices);
-		SearchHit[] hits = response.getHits().getHits();
+	public void closePointInTime(String pit) {
+		Request request = new Request("DELETE", "/_pit");
+		request.setJsonEntity("{\"id\":" + quote(pit) + "}");
+		try {
+			performRequest(request);
+		} catch (IOException e) {// expired or already closed
+		}
+	}
 
-		List<T> tss = new ArrayList<>();
-		if (hits != null && hits.length > 0) {
-			for (SearchHit hit : hits) {
-				try {
-					tss.add(mapper.readValue(hit.getSourceAsString(), clazz));
-				} catch (IOException e) {
-					throw new RuntimeException(e);
-				}
+	/**
+	 * 不经过执行器、不重试的低级请求，异步桥接模式下在 CompletableFuture 上等待
+	 */
+	private Response performRequest(Request request) throws IOException {
+		if (!asyncBridging) {
+			return client.getLowLevelClient().performRequest(request);
+		}
+		CompletableFuture<Response> future = new CompletableFuture<>();
+		Cancellable cancellable = lowLevelOperator.operator(request,
+				ActionListener.wrap(future::complete, future::completeExceptionally));
+		return await(future, cancellable);
+	}
+
+	/**
+	 * 请求体只能发送一次：RestClient 换节点重发时取消请求，见 {@link OneShotEntity}
+	 */
+	private Response performOnce(Request request, OneShotEntity entity) throws IOException {
+		CompletableFuture<Response> future = new CompletableFuture<>();
+		Cancellable cancellable = lowLevelOperator.operator(request,
+				ActionListener.wrap(future::complete, future::completeExceptionally));
+		entity.setCancellable(cancellable);
+		try {
+			return await(future, cancellable);
+		} catch (CancellationException e) {
+			if (!entity.isReplayed()) {
+				throw e;
+			}
+			// RestClient reports the cancellation first and the failure that triggered the retry as suppressed
+			Throwable[] suppressed = e.getSuppressed();
+			throw new IOException("request body cannot be replayed on another node",
+					suppressed.length > 0 ? suppressed[0] : e);
+		}
+	}
+
+	private static Response await(CompletableFuture<Response> future, Cancellable cancellable) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			cancellable.cancel();
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
 			}
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+					: new RuntimeException(e.getCause());
+		}
+	}
+
+	private String quote(String value) {
+		try {
+			return mapper.writeValueAsString(value);
+		} catch (JsonProcessingException e) {
+			throw new RuntimeException(e);
 		}
-		return tss;
 	}
 
 	public BulkByScrollResponse deleteByQuery(QueryBuilder query, String... indices) {
@@ -569,13 +1889,43 @@ public class ElasticsearchTemplate {
 	}
 
 	public CountResponse count(QueryBuilder query, String... indices) {
-		return count(new CountRequest(indices, query));
+		final QueryCache cache = queryCache;
+		if (cache == null) {
+			return count(new CountRequest(indices, query));
+		}
+		String source = query == null ? "" : query.toString();
+		return copyOf(cache.get(QueryCache.key("count", source, indices, null),
+				() -> new QueryCache.Weighted<>(count(new CountRequest(indices, query)), source.length() + 128L)));
+	}
+
+	private static CountResponse copyOf(CountResponse response) {
+		CountResponse.ShardStats stats = response.getShardStats();
+		return new CountResponse(response.getCount(), response.isTerminatedEarly(),
+				stats == null ? null
+						: new CountResponse.ShardStats(stats.getSuccessfulShards(), stats.getTotalShards(),
+								stats.getSkippedShards(), stats.getShardFailures()));
+	}
+
+	/**
+	 * 开启 search/count 结果缓存，null表示关闭。通过本模板写入的索引会自动使相关结果失效。
+	 * search 结果在缓存中只保存序列化后的字节，count 保存的响应只在缓存内部使用，每次命中都返回新的对象
+	 */
+	public void setQueryCache(QueryCache queryCache) {
+		this.queryCache = queryCache;
+	}
+
+	public QueryCache getQueryCache() {
+		return queryCache;
 	}
 
 	public CountResponse count(CountRequest request) {
 		return exec(countRequestOperator, request);
 	}
 
+	public CompletableFuture<CountResponse> countFuture(QueryBuilder query, String... indices) {
+		return execAsync(countRequestOperator, new CountRequest(indices, query));
+	}
+
 	public RestHighLevelClient client() {
 		return client;
 	}
@@ -597,7 +1947,18 @@ public class ElasticsearchTemplate {
 	}
 
 	public boolean exists(String index, String id) {
-		return exists(new GetRequest(index, id));
+		final DocumentCache cache = documentCache;
+		if (cache == null) {
+			return exists(new GetRequest(index, id));
+		}
+		CachedDocument cached = cache.get(index, id);
+		if (cached != null) {
+			return cached.isFound();
+		}
+		long stamp = cache.stamp(index);
+		boolean found = exists(new GetRequest(index, id));
+		cache.fill(index, id, stamp, new CachedDocument(found, null, -1L, 0L));
+		return found;
 	}
 
 	public boolean exists(GetRequest request) {
@@ -608,4 +1969,44 @@ public class ElasticsearchTemplate {
 		return exec(updateRequestOperator, request);
 	}
 
-}
\ No newline at end of file
+	private static final class DocumentKey {
+
+		final String index;
+		final String id;
+
+		DocumentKey(String index, String id) {
+			this.index = index;
+			this.id = id;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof DocumentKey)) {
+				return false;
+			}
+			DocumentKey k = (DocumentKey) o;
+			return index.equals(k.index) && id.equals(k.id);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(index, id);
+		}
+	}
+
+	/**
+	 * 合并中的查询，按引用区分
+	 */
+	private static final class PendingSearch {
+
+		final SearchRequest request;
+
+		PendingSearch(SearchRequest request) {
+			this.request = request;
+		}
+	}
+
+}
@@ -0,0 +1,63 @@
+package com.heanbian.block.elasticsearch.client.bulk;
+
+import org.elasticsearch.action.DocWriteRequest.OpType;
+import org.elasticsearch.rest.RestStatus;
+
+public class BulkFailure<T> {
+
+	private final T source;
+	private final String index;
+	private final String id;
+	private final OpType opType;
+	private final RestStatus status;
+	private final String message;
+	private final Exception cause;
+
+	public BulkFailure(T source, String index, String id, OpType opType, RestStatus status, String message,
+			Exception cause) {
+		this.source = source;
+		this.index = index;
+		this.id = id;
+		this.opType = opType;
+		this.status = status;
+		this.message = message;
+		this.cause = cause;
+	}
+
+	/**
+	 * 失败的源数据，删除操作时为文档id
+	 */
+	public T getSource() {
+		return source;
+	}
+
+	public String getIndex() {
+		return index;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public OpType getOpType() {
+		return opType;
+	}
+
+	public RestStatus getStatus() {
+		return status;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public Exception getCause() {
+		return cause;
+	}
+
+	@Override
+	public String toString() {
+		return "[" + index + "][" + id + "] " + opType + " " + status + ": " + message;
+	}
+
+}
@@ -0,0 +1,316 @@
+package com.heanbian.block.elasticsearch.client.bulk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.heanbian.block.elasticsearch.client.ElasticsearchId;
+import com.heanbian.block.elasticsearch.client.codec.ObjectCodecRegistry;
+
+/**
+ * 长期存活的批量写入器，线程安全。按文档数、字节数或时间间隔自动刷新，并限制同时进行的刷新数。
+ * <p>
+ * 刷新需要等待并发许可，等待时调用线程被中断则不刷新：请求留在缓冲区中随下次刷新发送，中断标志保持，
+ * {@link #awaitClose} 抛出 {@link InterruptedException}，{@link #close()} 抛出 {@link IllegalStateException}。
+ *
+ * @author heanbian
+ *
+ */
+public class BulkIngester implements Closeable {
+
+	private static final AtomicInteger POOL_SEQUENCE = new AtomicInteger();
+
+	private final Function<BulkRequest, BulkResponse> sender;
+	private final ObjectCodecRegistry codecs;
+	private final int bulkActions;
+	private final long bulkSize;
+	private final int concurrentRequests;
+	private final Listener listener;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final AtomicLong executionIdGen = new AtomicLong();
+	private final Semaphore semaphore;
+	private final ExecutorService flushExecutor;
+	private final ScheduledExecutorService scheduler;
+	private final ScheduledFuture<?> scheduledFlush;
+
+	private BulkRequest bulkRequest = new BulkRequest();
+	private volatile boolean closed;
+
+	public BulkIngester(Function<BulkRequest, BulkResponse> sender, ObjectMapper mapper, BulkIngesterOptions options) {
+		this(sender, new ObjectCodecRegistry(mapper), options);
+	}
+
+	public BulkIngester(Function<BulkRequest, BulkResponse> sender, ObjectCodecRegistry codecs,
+			BulkIngesterOptions options) {
+		this.sender = sender;
+		this.codecs = codecs;
+		this.bulkActions = options.getBulkActions();
+		this.bulkSize = options.getBulkSize();
+		this.concurrentRequests = options.getConcurrentRequests();
+		this.listener = options.getListener() != null ? options.getListener() : new Listener() {
+		};
+
+		final String poolName = "es-bulk-ingester-" + POOL_SEQUENCE.incrementAndGet();
+		this.semaphore = new Semaphore(Math.max(concurrentRequests, 1));
+		this.flushExecutor = concurrentRequests > 0
+				? Executors.newFixedThreadPool(concurrentRequests, daemonThreadFactory(poolName + "-flush"))
+				: null;
+
+		Duration interval = options.getFlushInterval();
+		if (interval != null && !interval.isZero() && !interval.isNegative()) {
+			this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory(poolName + "-scheduler"));
+			long nanos = interval.toNanos();
+			this.scheduledFlush = scheduler.scheduleWithFixedDelay(this::flushQuietly, nanos, nanos,
+					TimeUnit.NANOSECONDS);
+		} else {
+			this.scheduler = null;
+			this.scheduledFlush = null;
+		}
+	}
+
+	public <T extends ElasticsearchId> BulkIngester index(String index, T source) {
+		return add(new IndexRequest(index).id(source.getElasticsearchId()).source(toJson(source), XContentType.JSON));
+	}
+
+	public <T extends ElasticsearchId> BulkIngester update(String index, T source) {
+		return add(new UpdateRequest(index, source.getElasticsearchId()).doc(toJson(source), XContentType.JSON));
+	}
+
+	public BulkIngester delete(String index, String id) {
+		return add(new DeleteRequest(index, id));
+	}
+
+	/**
+	 * 加入请求，达到阈值时刷新；等待并发许可时被中断则请求留在缓冲区中，中断标志保持
+	 */
+	public BulkIngester add(DocWriteRequest<?> request) {
+		Batch full = null;
+		lock.lock();
+		try {
+			ensureOpen();
+			bulkRequest.add(request);
+			if (isOverThreshold()) {
+				full = detach();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			lock.unlock();
+		}
+		if (full != null) {
+			execute(full);
+		}
+		return this;
+	}
+
+	/**
+	 * 立即刷新当前累计的请求，等待并发许可时被中断则不刷新，中断标志保持
+	 */
+	public void flush() {
+		ensureOpen();
+		flushQuietly();
+	}
+
+	/**
+	 * 刷新剩余请求并等待所有进行中的刷新完成。每个分离出的批次在锁内占用一个并发许可，
+	 * 取回全部许可即说明调用线程、刷新线程和定时刷新中的发送都已结束。
+	 * 分离剩余请求前被中断时不关闭，请求仍在缓冲区中，可以再次调用
+	 */
+	public boolean awaitClose(long timeout, TimeUnit unit) throws InterruptedException {
+		Batch pending = null;
+		lock.lock();
+		try {
+			if (!closed) {
+				pending = detachIfNotEmpty();
+				closed = true;
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (scheduledFlush != null) {
+			scheduledFlush.cancel(false);
+			scheduler.shutdown();
+		}
+		if (pending != null) {
+			execute(pending);
+		}
+		if (flushExecutor != null) {
+			flushExecutor.shutdown();
+		}
+		final int permits = Math.max(concurrentRequests, 1);
+		if (semaphore.tryAcquire(permits, timeout, unit)) {
+			semaphore.release(permits);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 等待进行中的刷新时被中断只恢复中断标志，已分离的批次仍会发送完；
+	 * 剩余请求还没分离时被中断抛出 {@link IllegalStateException}，请求仍在缓冲区中
+	 */
+	@Override
+	public void close() {
+		try {
+			awaitClose(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			if (!closed) {
+				throw new IllegalStateException("interrupted before the buffered requests were flushed, "
+						+ "call close() again to send them", e);
+			}
+		}
+	}
+
+	private void flushQuietly() {
+		if (closed) {
+			return;
+		}
+		Batch pending;
+		try {
+			pending = detachIfNotEmpty();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		if (pending != null) {
+			execute(pending);
+		}
+	}
+
+	private boolean isOverThreshold() {
+		return (bulkActions > 0 && bulkRequest.numberOfActions() >= bulkActions)
+				|| (bulkSize > 0 && bulkRequest.estimatedSizeInBytes() >= bulkSize);
+	}
+
+	/**
+	 * 须持有锁调用：占用一个并发许可后分离当前请求，与 {@code BulkProcessor} 一致；被中断时请求留在缓冲区中
+	 */
+	private Batch detach() throws InterruptedException {
+		semaphore.acquire();
+		BulkRequest full = bulkRequest;
+		bulkRequest = new BulkRequest();
+		return new Batch(executionIdGen.incrementAndGet(), full);
+	}
+
+	private Batch detachIfNotEmpty() throws InterruptedException {
+		lock.lock();
+		try {
+			return bulkRequest.numberOfActions() > 0 ? detach() : null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 发送已占用许可的批次，发送结束后释放许可
+	 */
+	private void execute(Batch batch) {
+		final long executionId = batch.executionId;
+		final BulkRequest request = batch.request;
+		if (flushExecutor == null) {
+			try {
+				send(executionId, request);
+			} finally {
+				semaphore.release();
+			}
+			return;
+		}
+		try {
+			flushExecutor.execute(() -> {
+				try {
+					send(executionId, request);
+				} finally {
+					semaphore.release();
+				}
+			});
+		} catch (RejectedExecutionException e) {// closed concurrently, send in caller
+			try {
+				send(executionId, request);
+			} finally {
+				semaphore.release();
+			}
+		}
+	}
+
+	private void send(long executionId, BulkRequest request) {
+		listener.beforeBulk(executionId, request);
+		BulkResponse response;
+		try {
+			response = sender.apply(request);
+		} catch (RuntimeException e) {
+			listener.afterBulk(executionId, request, e);
+			return;
+		}
+		listener.afterBulk(executionId, request, response);
+	}
+
+	private byte[] toJson(Object source) {
+		try {
+			return codecs.write(source);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void ensureOpen() {
+		if (closed) {
+			throw new IllegalStateException("bulk ingester already closed");
+		}
+	}
+
+	private static ThreadFactory daemonThreadFactory(String name) {
+		final AtomicInteger seq = new AtomicInteger();
+		return r -> {
+			Thread t = new Thread(r, name + "-" + seq.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+	}
+
+	private static final class Batch {
+
+		private final long executionId;
+		private final BulkRequest request;
+
+		private Batch(long executionId, BulkRequest request) {
+			this.executionId = executionId;
+			this.request = request;
+		}
+	}
+
+	public interface Listener {
+
+		default void beforeBulk(long executionId, BulkRequest request) {
+		}
+
+		default void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+		}
+
+		default void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+		}
+	}
+
+}
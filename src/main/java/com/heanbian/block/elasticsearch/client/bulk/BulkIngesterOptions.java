@@ -0,0 +1,80 @@
+package com.heanbian.block.elasticsearch.client.bulk;
+
+import java.time.Duration;
+
+public class BulkIngesterOptions {
+
+	/**
+	 * 累计文档数达到该值时刷新，小于等于0表示不限制
+	 */
+	private int bulkActions = 1000;
+
+	/**
+	 * 累计字节数达到该值时刷新，小于等于0表示不限制
+	 */
+	private long bulkSize = 5L * 1024 * 1024;
+
+	/**
+	 * 定时刷新间隔，null表示不定时刷新
+	 */
+	private Duration flushInterval = Duration.ofSeconds(1);
+
+	/**
+	 * 同时进行的刷新数，0表示在调用线程中同步刷新
+	 */
+	private int concurrentRequests = 1;
+
+	/**
+	 * 刷新回调
+	 */
+	private BulkIngester.Listener listener;
+
+	public int getBulkActions() {
+		return bulkActions;
+	}
+
+	public BulkIngesterOptions setBulkActions(int bulkActions) {
+		this.bulkActions = bulkActions;
+		return this;
+	}
+
+	public long getBulkSize() {
+		return bulkSize;
+	}
+
+	public BulkIngesterOptions setBulkSize(long bulkSize) {
+		this.bulkSize = bulkSize;
+		return this;
+	}
+
+	public Duration getFlushInterval() {
+		return flushInterval;
+	}
+
+	public BulkIngesterOptions setFlushInterval(Duration flushInterval) {
+		this.flushInterval = flushInterval;
+		return this;
+	}
+
+	public int getConcurrentRequests() {
+		return concurrentRequests;
+	}
+
+	public BulkIngesterOptions setConcurrentRequests(int concurrentRequests) {
+		if (concurrentRequests < 0) {
+			throw new IllegalArgumentException("concurrentRequests must not be negative");
+		}
+		this.concurrentRequests = concurrentRequests;
+		return this;
+	}
+
+	public BulkIngester.Listener getListener() {
+		return listener;
+	}
+
+	public BulkIngesterOptions setListener(BulkIngester.Listener listener) {
+		this.listener = listener;
+		return this;
+	}
+
+}
@@ -0,0 +1,64 @@
+package com.heanbian.block.elasticsearch.client.bulk;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+
+public final class BulkResponses {
+
+	private BulkResponses() {
+	}
+
+	/**
+	 * 按字节数将批量请求拆成多个，每个不超过 maxBytes（单条超过时独占一个）
+	 */
+	public static List<BulkRequest> partition(BulkRequest request, long maxBytes) {
+		List<BulkRequest> parts = new ArrayList<>();
+		BulkRequest current = newLike(request);
+		for (DocWriteRequest<?> r : request.requests()) {
+			current.add(r);
+			if (current.estimatedSizeInBytes() >= maxBytes) {
+				parts.add(current);
+				current = newLike(request);
+			}
+		}
+		if (current.numberOfActions() > 0) {
+			parts.add(current);
+		}
+		return parts;
+	}
+
+	/**
+	 * 按顺序合并多个批量响应，条目编号按合并后的位置重排；耗时取最大值（各部分并发发送）
+	 */
+	public static BulkResponse concat(List<BulkResponse> responses) {
+		int size = 0;
+		for (BulkResponse r : responses) {
+			size += r.getItems().length;
+		}
+		BulkItemResponse[] items = new BulkItemResponse[size];
+		long took = 0;
+		int offset = 0;
+		for (BulkResponse r : responses) {
+			for (BulkItemResponse item : r.getItems()) {
+				items[offset] = BulkRetry.renumber(offset, item);
+				offset++;
+			}
+			took = Math.max(took, r.getTook().millis());
+		}
+		return new BulkResponse(items, took);
+	}
+
+	static BulkRequest newLike(BulkRequest request) {
+		BulkRequest copy = new BulkRequest();
+		copy.timeout(request.timeout());
+		copy.setRefreshPolicy(request.getRefreshPolicy());
+		copy.waitForActiveShards(request.waitForActiveShards());
+		return copy;
+	}
+
+}
@@ -0,0 +1,70 @@
+package com.heanbian.block.elasticsearch.client.bulk;
+
+import static java.util.Collections.unmodifiableList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse.Failure;
+import org.elasticsearch.action.bulk.BulkResponse;
+
+/**
+ * 批量请求的结果，按条目列出失败的文档及原因
+ *
+ * @author heanbian
+ *
+ */
+public class BulkResult<T> {
+
+	private final BulkResponse response;
+	private final List<BulkFailure<T>> failures;
+
+	private BulkResult(BulkResponse response, List<BulkFailure<T>> failures) {
+		this.response = response;
+		this.failures = failures;
+	}
+
+	/**
+	 * @param sources 与请求条目顺序一致的源数据
+	 */
+	public static <T> BulkResult<T> of(BulkResponse response, List<T> sources) {
+		List<BulkFailure<T>> failures = new ArrayList<>();
+		if (response.hasFailures()) {
+			for (BulkItemResponse item : response.getItems()) {
+				if (!item.isFailed()) {
+					continue;
+				}
+				int itemId = item.getItemId();
+				T source = (itemId >= 0 && itemId < sources.size()) ? sources.get(itemId) : null;
+				Failure f = item.getFailure();
+				failures.add(new BulkFailure<>(source, f.getIndex(), f.getId(), item.getOpType(), f.getStatus(),
+						f.getMessage(), f.getCause()));
+			}
+		}
+		return new BulkResult<>(response, unmodifiableList(failures));
+	}
+
+	public BulkResponse getResponse() {
+		return response;
+	}
+
+	public boolean hasFailures() {
+		return !failures.isEmpty();
+	}
+
+	public List<BulkFailure<T>> getFailures() {
+		return failures;
+	}
+
+	public List<T> getFailedSources() {
+		List<T> rs = new ArrayList<>(failures.size());
+		failures.forEach(f -> rs.add(f.getSource()));
+		return rs;
+	}
+
+	public int getSucceeded() {
+		return response.getItems().length - failures.size();
+	}
+
+}
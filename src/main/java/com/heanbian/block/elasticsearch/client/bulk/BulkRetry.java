@@ -0,0 +1,113 @@
+package com.heanbian.block.elasticsearch.client.bulk;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.rest.RestStatus;
+
+/**
+ * 批量请求中因 429/503 失败的条目按退避策略单独重发，已成功的条目不会重复发送。
+ * 退避等待在调用线程中 sleep，重试期间调用方一直阻塞，不应在 I/O 线程或回调中使用；等待时被中断则停止重试，返回已有结果。
+ *
+ * @author heanbian
+ *
+ */
+public class BulkRetry {
+
+	private final Function<BulkRequest, BulkResponse> sender;
+	private final BackoffPolicy backoffPolicy;
+
+	public BulkRetry(Function<BulkRequest, BulkResponse> sender, BackoffPolicy backoffPolicy) {
+		this.sender = sender;
+		this.backoffPolicy = backoffPolicy;
+	}
+
+	public BulkResponse send(BulkRequest request) {
+		return retry(request, sender.apply(request));
+	}
+
+	/**
+	 * 对已收到的响应中可重试的失败条目进行重发，阻塞到重试成功或退避次数用完
+	 */
+	public BulkResponse retry(BulkRequest request, BulkResponse response) {
+		if (!response.hasFailures()) {
+			return response;
+		}
+
+		final List<DocWriteRequest<?>> requests = request.requests();
+		final BulkItemResponse[] merged = response.getItems().clone();
+		long took = response.getTook().millis();
+
+		Iterator<TimeValue> backoff = backoffPolicy.iterator();
+		int[] positions = retryablePositions(merged);
+		while (positions.length > 0 && backoff.hasNext()) {
+			try {
+				Thread.sleep(backoff.next().millis());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+
+			BulkRequest retry = BulkResponses.newLike(request);
+			for (int p : positions) {
+				retry.add(requests.get(p));
+			}
+
+			BulkResponse retried;
+			try {
+				retried = sender.apply(retry);
+			} catch (RuntimeException e) {// keep the failures we already have
+				break;
+			}
+			took += retried.getTook().millis();
+
+			BulkItemResponse[] items = retried.getItems();
+			for (int i = 0; i < items.length; i++) {
+				merged[positions[i]] = renumber(positions[i], items[i]);
+			}
+			positions = retryablePositions(merged);
+		}
+		return new BulkResponse(merged, took);
+	}
+
+	protected boolean isRetryable(BulkItemResponse item) {
+		if (!item.isFailed()) {
+			return false;
+		}
+		RestStatus status = item.getFailure().getStatus();
+		return status == RestStatus.TOO_MANY_REQUESTS || status == RestStatus.SERVICE_UNAVAILABLE;
+	}
+
+	private int[] retryablePositions(BulkItemResponse[] items) {
+		int count = 0;
+		for (BulkItemResponse item : items) {
+			if (isRetryable(item)) {
+				count++;
+			}
+		}
+		int[] positions = new int[count];
+		for (int i = 0, j = 0; i < items.length; i++) {
+			if (isRetryable(items[i])) {
+				positions[j++] = i;
+			}
+		}
+		return positions;
+	}
+
+	static BulkItemResponse renumber(int itemId, BulkItemResponse item) {
+		if (item.isFailed()) {
+			return new BulkItemResponse(itemId, item.getOpType(), item.getFailure());
+		}
+		DocWriteResponse response = item.getResponse();
+		return new BulkItemResponse(itemId, item.getOpType(), response);
+	}
+
+}
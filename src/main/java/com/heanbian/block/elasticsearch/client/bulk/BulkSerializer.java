@@ -0,0 +1,82 @@
+package com.heanbian.block.elasticsearch.client.bulk;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import com.heanbian.block.elasticsearch.client.codec.ObjectCodecRegistry;
+
+/**
+ * 批量请求的文档序列化。文档数达到阈值时按块在 executor 上并行序列化，结果顺序与输入一致。
+ *
+ * @author heanbian
+ *
+ */
+public class BulkSerializer {
+
+	private static final int MIN_CHUNK_SIZE = 256;
+
+	private final ObjectCodecRegistry codecs;
+	private final Executor executor;
+	private final int parallelThreshold;
+	private final int parallelism;
+
+	public BulkSerializer(ObjectCodecRegistry codecs) {
+		this(codecs, ForkJoinPool.commonPool(), 1000, ForkJoinPool.getCommonPoolParallelism());
+	}
+
+	/**
+	 * @param executor          并行序列化使用的线程池，null表示始终在调用线程中序列化
+	 * @param parallelThreshold 文档数不少于该值时并行
+	 * @param parallelism       并行度，用于决定分块大小
+	 */
+	public BulkSerializer(ObjectCodecRegistry codecs, Executor executor, int parallelThreshold, int parallelism) {
+		this.codecs = codecs;
+		this.executor = executor;
+		this.parallelThreshold = parallelThreshold;
+		this.parallelism = Math.max(parallelism, 1);
+	}
+
+	public byte[][] serialize(List<?> list) {
+		// indexed access below, copy once so a LinkedList is not walked from the head for every document
+		final List<?> sources = list instanceof RandomAccess ? list : new ArrayList<>(list);
+		final int size = sources.size();
+		final byte[][] out = new byte[size][];
+		if (executor == null || size < parallelThreshold || parallelism == 1) {
+			serialize(sources, out, 0, size);
+			return out;
+		}
+
+		// a few chunks per worker so one slow chunk does not hold back the rest
+		final int chunk = Math.max(MIN_CHUNK_SIZE, (size + parallelism * 4 - 1) / (parallelism * 4));
+		List<CompletableFuture<Void>> futures = new ArrayList<>((size + chunk - 1) / chunk);
+		for (int from = 0; from < size; from += chunk) {
+			final int start = from;
+			final int end = Math.min(from + chunk, size);
+			futures.add(CompletableFuture.runAsync(() -> serialize(sources, out, start, end), executor));
+		}
+		try {
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+		} catch (CompletionException e) {
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+					: new RuntimeException(e.getCause());
+		}
+		return out;
+	}
+
+	private void serialize(List<?> sources, byte[][] out, int from, int to) {
+		for (int i = from; i < to; i++) {
+			try {
+				out[i] = codecs.write(sources.get(i));
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+}
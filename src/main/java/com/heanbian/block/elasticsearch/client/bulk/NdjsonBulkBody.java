@@ -0,0 +1,160 @@
+package com.heanbian.block.elasticsearch.client.bulk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 边读边生成的 _bulk 请求体：每次被读空时才从 sources 取下一批文档写成 NDJSON，
+ * 可选地同时 gzip 压缩，内存占用只与块大小和单个文档大小有关，与批量大小无关。
+ * <p>
+ * 原始字节数达到 maxBytes 后结束本次请求体，剩余文档可用新的实例继续发送。
+ * 作为请求体时由 HTTP 客户端的 I/O 线程读取，sources 的遍历和 writer 的序列化都在该线程上执行。
+ * 只能读取一次，发送时配合 {@link OneShotEntity} 使用。
+ *
+ * @author heanbian
+ *
+ */
+public class NdjsonBulkBody<T> extends InputStream {
+
+	@FunctionalInterface
+	public interface LineWriter<T> {
+
+		/**
+		 * 写入一个文档的 action 行和 source 行（均以换行结尾）
+		 */
+		void write(T source, OutputStream out) throws IOException;
+	}
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private final Iterator<? extends T> sources;
+	private final LineWriter<T> writer;
+	private final long maxBytes;
+
+	private final Chunk chunk = new Chunk();
+	private final GZIPOutputStream gzip;
+	private final OutputStream sink;
+
+	private long written;
+	private int actions;
+	private boolean finished;
+
+	public NdjsonBulkBody(Iterator<? extends T> sources, LineWriter<T> writer, long maxBytes, boolean gzip)
+			throws IOException {
+		this.sources = sources;
+		this.writer = writer;
+		this.maxBytes = maxBytes;
+		this.gzip = gzip ? new GZIPOutputStream(chunk, 8192) : null;
+		final OutputStream target = gzip ? this.gzip : chunk;
+		this.sink = new OutputStream() {
+
+			@Override
+			public void write(int b) throws IOException {
+				target.write(b);
+				written++;
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				target.write(b, off, len);
+				written += len;
+			}
+
+			@Override
+			public void close() {// serializers close their target, keep the body open
+			}
+		};
+	}
+
+	/**
+	 * 已写入的文档数
+	 */
+	public int getActions() {
+		return actions;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] one = new byte[1];
+		return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		while (chunk.readable() == 0) {
+			if (finished) {
+				return -1;
+			}
+			fill();
+		}
+		return chunk.read(b, off, len);
+	}
+
+	private void fill() throws IOException {
+		chunk.reset();
+		while (chunk.size() < CHUNK_SIZE && written < maxBytes && sources.hasNext()) {
+			writer.write(sources.next(), sink);
+			actions++;
+		}
+		if (written >= maxBytes || !sources.hasNext()) {
+			if (gzip != null) {
+				gzip.finish();
+			}
+			finished = true;
+		}
+	}
+
+	private static final class Chunk extends OutputStream {
+
+		private byte[] buf = new byte[CHUNK_SIZE + 8192];
+		private int count;
+		private int pos;
+
+		void reset() {
+			count = 0;
+			pos = 0;
+		}
+
+		int size() {
+			return count;
+		}
+
+		int readable() {
+			return count - pos;
+		}
+
+		int read(byte[] b, int off, int len) {
+			int n = Math.min(len, count - pos);
+			System.arraycopy(buf, pos, b, off, n);
+			pos += n;
+			return n;
+		}
+
+		@Override
+		public void write(int b) {
+			ensureCapacity(count + 1);
+			buf[count++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			ensureCapacity(count + len);
+			System.arraycopy(b, off, buf, count, len);
+			count += len;
+		}
+
+		private void ensureCapacity(int min) {
+			if (min > buf.length) {
+				buf = Arrays.copyOf(buf, Math.max(buf.length << 1, min));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,82 @@
+package com.heanbian.block.elasticsearch.client.bulk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.elasticsearch.client.Cancellable;
+
+/**
+ * 只能发送一次的流式请求体。RestClient 在 IOException 或 502/503/504 后会换节点重发同一个 entity，
+ * 而流已被读过一部分，重发的会是空请求体或从文档中间开始的请求体。
+ * <p>
+ * 第二次读取时先取消整个请求再抛出 IOException：取消不会把重试的节点标记为失效，
+ * 第一个节点的原始异常作为 suppressed 附在 CancellationException 上。
+ *
+ * @author heanbian
+ *
+ */
+public class OneShotEntity extends InputStreamEntity {
+
+	private final AtomicBoolean consumed = new AtomicBoolean();
+	private volatile Cancellable cancellable;
+	private volatile boolean replayed;
+
+	public OneShotEntity(InputStream content, ContentType contentType) {
+		super(content, -1, contentType);
+	}
+
+	/**
+	 * 请求发出后设置，重放时用于取消请求。设置前已经发生重放时立即取消
+	 */
+	public void setCancellable(Cancellable cancellable) {
+		this.cancellable = cancellable;
+		// claim() writes replayed before reading cancellable, so one of the two sides always sees the other
+		if (replayed) {
+			cancellable.cancel();
+		}
+	}
+
+	/**
+	 * RestClient 是否尝试过重发
+	 */
+	public boolean isReplayed() {
+		return replayed;
+	}
+
+	/**
+	 * 返回 false，否则 EntityAsyncContentProducer 关闭时会再次调用 getContent 去关闭流，被误判为重发
+	 */
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		claim();
+		return super.getContent();
+	}
+
+	@Override
+	public void writeTo(OutputStream out) throws IOException {
+		claim();
+		super.writeTo(out);
+	}
+
+	private void claim() throws IOException {
+		if (consumed.compareAndSet(false, true)) {
+			return;
+		}
+		replayed = true;
+		Cancellable c = cancellable;
+		if (c != null) {
+			c.cancel();
+		}
+		throw new IOException("streaming request body was already sent and cannot be replayed on another node");
+	}
+
+}
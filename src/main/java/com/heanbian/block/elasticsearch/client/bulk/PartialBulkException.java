@@ -0,0 +1,40 @@
+package com.heanbian.block.elasticsearch.client.bulk;
+
+import java.util.List;
+
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+
+/**
+ * 拆分发送的批量请求中有部分请求整体失败。已成功的部分已经写入，其响应按原顺序合并在 {@link #getCompleted()} 中，
+ * 失败的部分可通过 {@link #getFailedRequests()} 重新发送。首个失败为 cause，其余作为 suppressed。
+ *
+ * @author heanbian
+ *
+ */
+public class PartialBulkException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient BulkResponse completed;
+	private final transient List<BulkRequest> failedRequests;
+
+	public PartialBulkException(String message, BulkResponse completed, List<BulkRequest> failedRequests,
+			Throwable cause) {
+		super(message, cause);
+		this.completed = completed;
+		this.failedRequests = failedRequests;
+	}
+
+	/**
+	 * 已成功发送部分的合并响应，条目编号按合并后的位置重排
+	 */
+	public BulkResponse getCompleted() {
+		return completed;
+	}
+
+	public List<BulkRequest> getFailedRequests() {
+		return failedRequests;
+	}
+
+}
@@ -0,0 +1,216 @@
+package com.heanbian.block.elasticsearch.client.cache;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.elasticsearch.common.regex.Regex;
+
+/**
+ * findById/exists 的文档缓存，按 (index, id) 存放最近一次读到的 _source 字节。
+ * 每次命中都重新反序列化出新对象，调用方修改返回的对象不会影响缓存和其他调用方；不同类型读取同一文档也可命中。
+ * <p>
+ * 每个索引维护一个失效代数：读之前取 {@link #stamp(String)}，回填时代数已变化说明期间有写入，
+ * 回填被拒绝；已有条目的 seq_no 更新时也拒绝旧值覆盖。索引名按调用方传入的名字匹配，读写应使用相同的索引名或别名。
+ *
+ * @author heanbian
+ *
+ */
+public class DocumentCache {
+
+	private final LruCache<Key, CachedDocument> cache;
+	private final ConcurrentHashMap<String, AtomicLong> generations = new ConcurrentHashMap<>();
+	private final LongAdder rejectedFills = new LongAdder();
+
+	/**
+	 * @param maxWeight 缓存的 _source 字节数之和的上限
+	 * @param ttl       写入后的存活时间，null表示不过期
+	 */
+	public DocumentCache(long maxWeight, Duration ttl) {
+		this.cache = new LruCache<>(maxWeight, ttl, CachedDocument::getWeight);
+	}
+
+	public CachedDocument get(String index, String id) {
+		return cache.get(new Key(index, id));
+	}
+
+	/**
+	 * 读之前取当前失效代数，回填时传回
+	 */
+	public long stamp(String index) {
+		return generation(index).get();
+	}
+
+	/**
+	 * @return 是否写入，期间有写入或缓存中已有更新的版本时返回false
+	 */
+	public boolean fill(String index, String id, long stamp, CachedDocument document) {
+		final AtomicLong generation = generation(index);
+		boolean filled = cache.put(new Key(index, id), document,
+				(old, doc) -> generation.get() == stamp && (old == null || doc.isNewerThan(old)));
+		if (!filled) {
+			rejectedFills.increment();
+		}
+		return filled;
+	}
+
+	public void invalidate(String index, String id) {
+		generation(index).incrementAndGet();
+		cache.invalidate(new Key(index, id));
+	}
+
+	/**
+	 * 使索引下的所有文档失效，支持通配符，为空或 _all 时全部失效
+	 */
+	public void invalidateIndices(String... indices) {
+		if (indices == null || indices.length == 0 || (indices.length == 1 && "_all".equals(indices[0]))) {
+			invalidateAll();
+			return;
+		}
+		for (String index : indices) {
+			if (Regex.isSimpleMatchPattern(index)) {
+				generations.forEach((name, gen) -> {
+					if (Regex.simpleMatch(index, name)) {
+						gen.incrementAndGet();
+					}
+				});
+			} else {
+				generation(index).incrementAndGet();
+			}
+		}
+		cache.invalidateIf(key -> Regex.simpleMatch(indices, key.index));
+	}
+
+	public void invalidateAll() {
+		generations.values().forEach(AtomicLong::incrementAndGet);
+		cache.invalidateAll();
+	}
+
+	public int size() {
+		return cache.size();
+	}
+
+	public long getWeight() {
+		return cache.getWeight();
+	}
+
+	public long getHitCount() {
+		return cache.getHitCount();
+	}
+
+	public long getMissCount() {
+		return cache.getMissCount();
+	}
+
+	public long getEvictionCount() {
+		return cache.getEvictionCount();
+	}
+
+	/**
+	 * 因期间有写入或版本较旧而被拒绝的回填次数
+	 */
+	public long getRejectedFillCount() {
+		return rejectedFills.sum();
+	}
+
+	private AtomicLong generation(String index) {
+		return generations.computeIfAbsent(index, k -> new AtomicLong());
+	}
+
+	public static final class CachedDocument {
+
+		private static final byte[] EMPTY = new byte[0];
+
+		private final boolean found;
+		private final byte[] source;
+		private final long seqNo;
+		private final long primaryTerm;
+		private final long weight;
+
+		/**
+		 * @param source _source 字节，调用方不得再修改；只知道是否存在时为null，文档没有 _source 时为空数组
+		 * @param seqNo  未知时为负数
+		 */
+		public CachedDocument(boolean found, byte[] source, long seqNo, long primaryTerm) {
+			this.found = found;
+			this.source = found ? source : EMPTY;
+			this.seqNo = seqNo;
+			this.primaryTerm = primaryTerm;
+			this.weight = Math.max(this.source == null ? 0 : this.source.length, 1L);
+		}
+
+		public boolean isFound() {
+			return found;
+		}
+
+		/**
+		 * 共享的 _source 字节，只读
+		 */
+		public byte[] getSource() {
+			return source;
+		}
+
+		public long getSeqNo() {
+			return seqNo;
+		}
+
+		public long getPrimaryTerm() {
+			return primaryTerm;
+		}
+
+		public long getWeight() {
+			return weight;
+		}
+
+		/**
+		 * 是否可以命中 findById，只知道存在与否的条目不行
+		 */
+		public boolean hasSource() {
+			return source != null;
+		}
+
+		boolean isNewerThan(CachedDocument old) {
+			if (source == null && old.source != null && found == old.found) {// 不用只知道存在与否的条目覆盖带内容的条目
+				return false;
+			}
+			if (seqNo < 0 || old.seqNo < 0) {
+				return true;
+			}
+			if (primaryTerm != old.primaryTerm) {
+				return primaryTerm > old.primaryTerm;
+			}
+			return seqNo >= old.seqNo;
+		}
+	}
+
+	private static final class Key {
+
+		final String index;
+		final String id;
+
+		Key(String index, String id) {
+			this.index = index;
+			this.id = id;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key) o;
+			return index.equals(k.index) && id.equals(k.id);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(index, id);
+		}
+	}
+
+}
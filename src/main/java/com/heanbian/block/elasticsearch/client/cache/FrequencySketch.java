@@ -0,0 +1,96 @@
+package com.heanbian.block.elasticsearch.client.cache;
+
+/**
+ * TinyLFU 的近期访问频率估计：4 位计数器的 Count-Min Sketch，每个 key 占 4 个计数器，取最小值。
+ * 累计增加的次数达到采样数时所有计数减半，使频率反映近期而不是全部历史。非线程安全，由调用方加锁。
+ *
+ * @author heanbian
+ *
+ */
+final class FrequencySketch {
+
+	private static final long[] SEED = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+			0xcbf29ce484222325L };
+	private static final long RESET_MASK = 0x7777777777777777L;
+	private static final long ONE_MASK = 0x1111111111111111L;
+	private static final int MIN_TABLE_SIZE = 64;
+	private static final int MAX_TABLE_SIZE = 1 << 14;
+
+	private final long[] table;
+	private final int tableMask;
+	private final int sampleSize;
+	private int size;
+
+	/**
+	 * @param expectedEntries 预计的条目数，决定计数器个数
+	 */
+	FrequencySketch(long expectedEntries) {
+		int length = ceilingPowerOfTwo((int) Math.max(MIN_TABLE_SIZE, Math.min(expectedEntries, MAX_TABLE_SIZE)));
+		this.table = new long[length];
+		this.tableMask = length - 1;
+		this.sampleSize = 10 * length;
+	}
+
+	int frequency(Object e) {
+		int hash = spread(e.hashCode());
+		int start = (hash & 3) << 2;
+		int frequency = Integer.MAX_VALUE;
+		for (int i = 0; i < 4; i++) {
+			int index = indexOf(hash, i);
+			int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	void increment(Object e) {
+		int hash = spread(e.hashCode());
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			added |= incrementAt(indexOf(hash, i), start + i);
+		}
+		if (added && ++size == sampleSize) {
+			reset();
+		}
+	}
+
+	/**
+	 * 计数器未饱和（小于15）时加一
+	 */
+	private boolean incrementAt(int index, int counter) {
+		int offset = counter << 2;
+		long mask = 0xfL << offset;
+		if ((table[index] & mask) != mask) {
+			table[index] += 1L << offset;
+			return true;
+		}
+		return false;
+	}
+
+	private void reset() {
+		int odd = 0;
+		for (int i = 0; i < table.length; i++) {
+			odd += Long.bitCount(table[i] & ONE_MASK);
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		size = (size >>> 1) - (odd >>> 2);
+	}
+
+	private int indexOf(int hash, int i) {
+		long h = (hash + SEED[i]) * SEED[i];
+		h += h >>> 32;
+		return ((int) h) & tableMask;
+	}
+
+	private static int spread(int x) {
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+
+	static int ceilingPowerOfTwo(int x) {
+		return x <= 1 ? 1 : Integer.highestOneBit(x - 1) << 1;
+	}
+
+}
@@ -0,0 +1,397 @@
+package com.heanbian.block.elasticsearch.client.cache;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * 按权重限制大小、带过期时间的缓存，线程安全。
+ * <p>
+ * 超出容量时按 LRU 顺序选出淘汰者，再经 TinyLFU 准入：新条目的近期访问频率（见 {@link FrequencySketch}）
+ * 不高于淘汰者时淘汰新条目本身，一次性的大范围扫描不会把热点条目挤出去。
+ * <p>
+ * 读取不加锁：条目存放在 ConcurrentHashMap 中，命中和未命中只写入按线程分段的有损缓冲区，
+ * 由之后拿到锁的线程批量更新 LRU 顺序和频率。缓冲区满时丢弃访问记录，只影响淘汰的精度。
+ *
+ * @author heanbian
+ *
+ */
+public class LruCache<K, V> {
+
+	private final long maxWeight;
+	private final long ttlNanos;
+	private final ToLongFunction<V> weigher;
+	private final BiConsumer<K, V> removalListener;
+
+	private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+	private final ReadBuffer[] readBuffers;
+
+	// guarded by lock: the access order list, the sketch and the total weight
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Node<K, V> head = new Node<>(null, null, 0L, 0L);
+	private final FrequencySketch sketch;
+	private long weight;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * 按条目数限制大小
+	 */
+	public LruCache(long maxEntries, Duration ttl) {
+		this(maxEntries, ttl, v -> 1L);
+	}
+
+	/**
+	 * @param maxWeight 所有条目权重之和的上限
+	 * @param ttl       写入后的存活时间，null表示不过期
+	 * @param weigher   计算条目权重
+	 */
+	public LruCache(long maxWeight, Duration ttl, ToLongFunction<V> weigher) {
+		this(maxWeight, ttl, weigher, (k, v) -> {
+		});
+	}
+
+	/**
+	 * @param removalListener 条目因容量或过期被移除（包括未被准入的新条目）时在锁内回调，应当足够轻量；invalidate 不回调
+	 */
+	public LruCache(long maxWeight, Duration ttl, ToLongFunction<V> weigher, BiConsumer<K, V> removalListener) {
+		this.maxWeight = maxWeight;
+		this.ttlNanos = ttl == null ? 0L : ttl.toNanos();
+		this.weigher = weigher;
+		this.removalListener = removalListener;
+		this.sketch = new FrequencySketch(maxWeight);
+		int stripes = FrequencySketch.ceilingPowerOfTwo(Math.min(Runtime.getRuntime().availableProcessors(), 16));
+		this.readBuffers = new ReadBuffer[stripes];
+		for (int i = 0; i < stripes; i++) {
+			readBuffers[i] = new ReadBuffer();
+		}
+		head.prev = head;
+		head.next = head;
+	}
+
+	public V get(K key) {
+		Node<K, V> n = data.get(key);
+		if (n != null && isExpired(n)) {
+			lock.lock();
+			try {
+				if (data.remove(key, n)) {
+					evict(n);
+				}
+			} finally {
+				lock.unlock();
+			}
+			n = null;
+		}
+		if (n == null) {
+			misses.increment();
+			record(key);
+			return null;
+		}
+		hits.increment();
+		record(n);
+		return n.value;
+	}
+
+	public void put(K key, V value) {
+		put(key, value, (old, v) -> true);
+	}
+
+	/**
+	 * 仅当 replace(旧值, 新值) 为 true 时写入，旧值不存在或已过期时为null；replace 在锁内执行。
+	 * 写入的新 key 仍可能因准入被立即淘汰，此时回调 removalListener
+	 *
+	 * @return 是否写入
+	 */
+	public boolean put(K key, V value, BiPredicate<V, V> replace) {
+		Node<K, V> node = new Node<>(key, value, weigher.applyAsLong(value), System.nanoTime());
+		lock.lock();
+		try {
+			drainReadBuffers();
+			Node<K, V> current = data.get(key);
+			V currentValue = current == null || isExpired(current) ? null : current.value;
+			if (!replace.test(currentValue, value)) {
+				return false;
+			}
+			if (node.weight > maxWeight) {
+				if (current != null) {
+					data.remove(key);
+					unlink(current);
+					removalListener.accept(key, current.value);
+				}
+				return false;
+			}
+			if (current != null) {
+				unlink(current);
+			}
+			data.put(key, node);
+			link(node);
+			evictOverweight(current == null ? node : null);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 不存在或已过期时用 loader 创建并放入，loader 在锁内执行，应当足够轻量
+	 */
+	public V computeIfAbsent(K key, Function<K, V> loader) {
+		Node<K, V> n = data.get(key);
+		if (n != null && !isExpired(n)) {
+			hits.increment();
+			record(n);
+			return n.value;
+		}
+		lock.lock();
+		try {
+			drainReadBuffers();
+			n = data.get(key);
+			if (n != null && !isExpired(n)) {
+				hits.increment();
+				sketch.increment(key);
+				moveToTail(n);
+				return n.value;
+			}
+			if (n != null) {
+				data.remove(key);
+				evict(n);
+			}
+			misses.increment();
+			sketch.increment(key);
+			V value = loader.apply(key);
+			Node<K, V> node = new Node<>(key, value, weigher.applyAsLong(value), System.nanoTime());
+			data.put(key, node);
+			link(node);
+			evictOverweight(node);
+			return value;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void invalidate(K key) {
+		lock.lock();
+		try {
+			Node<K, V> old = data.remove(key);
+			if (old != null) {
+				unlink(old);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void invalidateIf(Predicate<K> predicate) {
+		lock.lock();
+		try {
+			for (Node<K, V> n = head.next, next; n != head; n = next) {
+				next = n.next;
+				if (predicate.test(n.key)) {
+					data.remove(n.key);
+					unlink(n);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void invalidateAll() {
+		lock.lock();
+		try {
+			data.clear();
+			while (head.next != head) {
+				unlink(head.next);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int size() {
+		return data.size();
+	}
+
+	public long getWeight() {
+		lock.lock();
+		try {
+			return weight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * 须持有锁调用：超出容量时逐个淘汰。candidate 为刚放入的新条目，与 LRU 端的淘汰者比较近期频率，不高于淘汰者时淘汰它自己
+	 */
+	private void evictOverweight(Node<K, V> candidate) {
+		while (weight > maxWeight && head.next != head) {
+			Node<K, V> victim = head.next == candidate ? candidate.next : head.next;
+			Node<K, V> loser = victim;
+			if (candidate != null
+					&& (victim == head || sketch.frequency(candidate.key) <= sketch.frequency(victim.key))) {
+				loser = candidate;
+				candidate = null;
+			}
+			data.remove(loser.key);
+			evict(loser);
+		}
+	}
+
+	/**
+	 * 须持有锁调用，loser 已从 data 中移除
+	 */
+	private void evict(Node<K, V> loser) {
+		unlink(loser);
+		evictions.increment();
+		removalListener.accept(loser.key, loser.value);
+	}
+
+	/**
+	 * 记录一次访问，命中时为 Node，未命中时为 key；待处理的记录较多时尝试顺便处理
+	 */
+	private void record(Object access) {
+		ReadBuffer buffer = readBuffers[(int) Thread.currentThread().getId() & (readBuffers.length - 1)];
+		if (buffer.offer(access) >= ReadBuffer.DRAIN_THRESHOLD && lock.tryLock()) {
+			try {
+				drainReadBuffers();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	private void drainReadBuffers() {
+		for (ReadBuffer buffer : readBuffers) {
+			buffer.drain(this::onAccess);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void onAccess(Object access) {
+		if (access instanceof Node) {
+			Node<K, V> n = (Node<K, V>) access;
+			sketch.increment(n.key);
+			if (n.prev != null) {// still cached
+				moveToTail(n);
+			}
+		} else {
+			sketch.increment(access);
+		}
+	}
+
+	private void link(Node<K, V> n) {
+		n.prev = head.prev;
+		n.next = head;
+		head.prev.next = n;
+		head.prev = n;
+		weight += n.weight;
+	}
+
+	private void unlink(Node<K, V> n) {
+		n.prev.next = n.next;
+		n.next.prev = n.prev;
+		n.prev = null;
+		n.next = null;
+		weight -= n.weight;
+	}
+
+	private void moveToTail(Node<K, V> n) {
+		if (n.next != head) {
+			unlink(n);
+			link(n);
+		}
+	}
+
+	private boolean isExpired(Node<K, V> n) {
+		return ttlNanos > 0 && System.nanoTime() - n.createdAt >= ttlNanos;
+	}
+
+	private static final class Node<K, V> {
+
+		final K key;
+		final V value;
+		final long weight;
+		final long createdAt;
+
+		// guarded by the cache lock, null once removed
+		Node<K, V> prev;
+		Node<K, V> next;
+
+		Node(K key, V value, long weight, long createdAt) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+			this.createdAt = createdAt;
+		}
+	}
+
+	/**
+	 * 单生产者组无锁、单消费者（持有缓存锁）的有界环形缓冲区，满或 CAS 竞争失败时丢弃记录
+	 */
+	private static final class ReadBuffer {
+
+		static final int SIZE = 64;
+		static final int MASK = SIZE - 1;
+		static final int DRAIN_THRESHOLD = SIZE / 2;
+
+		final AtomicReferenceArray<Object> slots = new AtomicReferenceArray<>(SIZE);
+		final AtomicLong writes = new AtomicLong();
+		volatile long reads;
+
+		/**
+		 * @return 写入后待处理的记录数
+		 */
+		int offer(Object access) {
+			long w = writes.get();
+			int pending = (int) (w - reads);
+			if (pending >= SIZE) {
+				return SIZE;
+			}
+			if (!writes.compareAndSet(w, w + 1)) {
+				return pending;
+			}
+			slots.lazySet((int) (w & MASK), access);
+			return pending + 1;
+		}
+
+		void drain(Consumer<Object> consumer) {
+			long r = reads;
+			final long w = writes.get();
+			for (; r < w; r++) {
+				int i = (int) (r & MASK);
+				Object access = slots.get(i);
+				if (access == null) {// claimed but not yet written, pick it up next time
+					break;
+				}
+				slots.lazySet(i, null);
+				consumer.accept(access);
+			}
+			reads = r;
+		}
+	}
+
+}
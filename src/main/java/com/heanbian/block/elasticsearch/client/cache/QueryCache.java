@@ -0,0 +1,253 @@
+package com.heanbian.block.elasticsearch.client.cache;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.elasticsearch.common.regex.Regex;
+
+/**
+ * search/count 的结果缓存。key 由查询类型、查询的 JSON、排序后的索引名和结果类型组成。
+ * 缓存的值在线程间共享，只应存放不可变的值（如 _source 字节、JSON 字节、数字），由调用方在每次命中时转换成新对象。
+ * <p>
+ * 同一个 key 的并发未命中只加载一次。失效按查询中的索引名（支持通配符）分别计代：写入某个索引只影响查询了匹配索引的结果，
+ * 加载期间这些索引有写入时不回填；条目按索引名建立反向索引，失效时不扫描整个缓存。
+ * 通过别名写入无法匹配的结果只能等 TTL 过期。
+ *
+ * @author heanbian
+ *
+ */
+public class QueryCache {
+
+	private static final String ALL = "_all";
+
+	private final LruCache<Key, Weighted<?>> cache;
+	private final ConcurrentHashMap<Key, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, AtomicLong> generations = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, Set<Key>> keysByIndex = new ConcurrentHashMap<>();
+	private final LongAdder rejectedFills = new LongAdder();
+
+	/**
+	 * @param maxWeight 缓存结果的估算字节数之和的上限
+	 * @param ttl       写入后的存活时间，null表示不过期
+	 */
+	public QueryCache(long maxWeight, Duration ttl) {
+		this.cache = new LruCache<>(maxWeight, ttl, Weighted::getWeight, (key, value) -> unregister(key));
+	}
+
+	public static Key key(String kind, String source, String[] indices, Class<?> clazz) {
+		return new Key(kind, source, indices, clazz);
+	}
+
+	/**
+	 * 命中时直接返回，未命中时由一个调用方执行 loader，其它同 key 的调用方等待其结果
+	 */
+	@SuppressWarnings("unchecked")
+	public <V> V get(Key key, Supplier<Weighted<V>> loader) {
+		Weighted<?> cached = cache.get(key);
+		if (cached != null) {
+			return (V) cached.value;
+		}
+		CompletableFuture<Object> mine = new CompletableFuture<>();
+		CompletableFuture<Object> existing = loading.putIfAbsent(key, mine);
+		if (existing != null) {
+			try {
+				return (V) existing.get();
+			} catch (InterruptedException e) {// 加载由其它调用方发起，不取消
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+						: new RuntimeException(e.getCause());
+			}
+		}
+		try {
+			final long stamp = stamp(key);
+			Weighted<V> loaded = loader.get();
+			// register before the put so an invalidation racing with the fill always finds the key,
+			// an entry evicted or not admitted right away is unregistered by the removal listener
+			register(key);
+			if (!cache.put(key, loaded, (old, v) -> stamp(key) == stamp)) {
+				unregister(key);
+				rejectedFills.increment();
+			}
+			mine.complete(loaded.value);
+			return loaded.value;
+		} catch (RuntimeException | Error e) {
+			mine.completeExceptionally(e);
+			throw e;
+		} finally {
+			loading.remove(key, mine);
+		}
+	}
+
+	/**
+	 * 使查询了这些索引的结果失效，为空或 _all 时全部失效
+	 */
+	public void invalidateIndices(String... indices) {
+		if (indices == null || indices.length == 0 || (indices.length == 1 && ALL.equals(indices[0]))) {
+			invalidateAll();
+			return;
+		}
+		for (Map.Entry<String, AtomicLong> e : generations.entrySet()) {
+			if (matches(e.getKey(), indices)) {
+				e.getValue().incrementAndGet();
+				Set<Key> keys = keysByIndex.get(e.getKey());
+				if (keys != null) {
+					for (Iterator<Key> it = keys.iterator(); it.hasNext();) {
+						Key key = it.next();
+						// invalidate does not call the removal listener, drop the key from its other indices too
+						unregister(key);
+						cache.invalidate(key);
+					}
+				}
+			}
+		}
+	}
+
+	public void invalidateAll() {
+		generations.values().forEach(AtomicLong::incrementAndGet);
+		keysByIndex.clear();
+		cache.invalidateAll();
+	}
+
+	public int size() {
+		return cache.size();
+	}
+
+	public long getWeight() {
+		return cache.getWeight();
+	}
+
+	public long getHitCount() {
+		return cache.getHitCount();
+	}
+
+	public long getMissCount() {
+		return cache.getMissCount();
+	}
+
+	public long getEvictionCount() {
+		return cache.getEvictionCount();
+	}
+
+	/**
+	 * 因加载期间有写入而被拒绝的回填次数
+	 */
+	public long getRejectedFillCount() {
+		return rejectedFills.sum();
+	}
+
+	/**
+	 * 反向索引中登记在该索引名下的 key 数
+	 */
+	int indexedKeyCount(String index) {
+		Set<Key> keys = keysByIndex.get(index);
+		return keys == null ? 0 : keys.size();
+	}
+
+	/**
+	 * 查询的各个索引名的代数之和，任一索引失效后都会变化
+	 */
+	private long stamp(Key key) {
+		long stamp = 0;
+		for (String index : key.indices) {
+			stamp += generations.computeIfAbsent(index, k -> new AtomicLong()).get();
+		}
+		return stamp;
+	}
+
+	private void register(Key key) {
+		for (String index : key.indices) {
+			keysByIndex.computeIfAbsent(index, k -> ConcurrentHashMap.newKeySet()).add(key);
+		}
+	}
+
+	private void unregister(Key key) {
+		for (String index : key.indices) {
+			Set<Key> keys = keysByIndex.get(index);
+			if (keys != null) {
+				keys.remove(key);
+			}
+		}
+	}
+
+	private static boolean matches(String queried, String[] written) {
+		if (ALL.equals(queried)) {
+			return true;
+		}
+		for (String w : written) {
+			if (Regex.simpleMatch(queried, w) || Regex.simpleMatch(w, queried)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public static final class Weighted<V> {
+
+		private final V value;
+		private final long weight;
+
+		public Weighted(V value, long weight) {
+			this.value = value;
+			this.weight = Math.max(weight, 1L);
+		}
+
+		public V getValue() {
+			return value;
+		}
+
+		public long getWeight() {
+			return weight;
+		}
+	}
+
+	public static final class Key {
+
+		private final String kind;
+		private final String source;
+		private final String[] indices;
+		private final Class<?> clazz;
+		private final int hash;
+
+		private Key(String kind, String source, String[] indices, Class<?> clazz) {
+			this.kind = kind;
+			this.source = source;
+			String[] sorted = indices == null ? new String[0] : indices.clone();
+			Arrays.sort(sorted);
+			// 不指定索引或含 _all 时查询全部索引，归到 _all 下，任何写入都会使其失效
+			this.indices = sorted.length == 0 || Arrays.asList(sorted).contains(ALL) ? new String[] { ALL } : sorted;
+			this.clazz = clazz;
+			this.hash = Objects.hash(kind, source, Arrays.hashCode(this.indices), clazz);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key) o;
+			return hash == k.hash && kind.equals(k.kind) && source.equals(k.source) && Arrays.equals(indices, k.indices)
+					&& clazz == k.clazz;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+}
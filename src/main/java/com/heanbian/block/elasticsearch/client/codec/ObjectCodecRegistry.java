@@ -0,0 +1,128 @@
+package com.heanbian.block.elasticsearch.client.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * 按文档类型缓存预先构建的 ObjectReader/ObjectWriter，二者不可变，可在线程间共享。
+ * 序列化写入线程内复用的缓冲区，只为结果分配一次精确大小的 byte[]。
+ * <p>
+ * 需要字节码加速时，可传入 Afterburner/Blackbird 等 Module，或在传入的 ObjectMapper 上预先注册。
+ *
+ * @author heanbian
+ *
+ */
+public class ObjectCodecRegistry {
+
+	/**
+	 * 超过该大小的缓冲区用完后不再保留，避免个别大文档长期占用内存
+	 */
+	private static final int MAX_RETAINED_BUFFER = 1 << 20;
+
+	private final ObjectMapper mapper;
+	private final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+	private final ThreadLocal<Buffer> buffers = ThreadLocal.withInitial(Buffer::new);
+
+	public ObjectCodecRegistry(ObjectMapper mapper) {
+		this.mapper = mapper;
+	}
+
+	/**
+	 * @param modules 额外注册的模块，注册在 mapper 的副本上，不影响原 mapper
+	 */
+	public ObjectCodecRegistry(ObjectMapper mapper, Module... modules) {
+		this(modules.length == 0 ? mapper : mapper.copy().registerModules(modules));
+	}
+
+	public ObjectMapper getObjectMapper() {
+		return mapper;
+	}
+
+	public ObjectReader reader(Class<?> clazz) {
+		ObjectReader reader = readers.get(clazz);
+		if (reader == null) {
+			reader = readers.computeIfAbsent(clazz, mapper::readerFor);
+		}
+		return reader;
+	}
+
+	public ObjectWriter writer(Class<?> clazz) {
+		ObjectWriter writer = writers.get(clazz);
+		if (writer == null) {
+			writer = writers.computeIfAbsent(clazz, mapper::writerFor);
+		}
+		return writer;
+	}
+
+	public <T> T read(byte[] src, int offset, int length, Class<T> clazz) throws IOException {
+		return reader(clazz).readValue(src, offset, length);
+	}
+
+	public <T> T read(InputStream in, Class<T> clazz) throws IOException {
+		return reader(clazz).readValue(in);
+	}
+
+	public byte[] write(Object value) throws IOException {
+		Buffer buffer = buffers.get();
+		buffer.reset();
+		try {
+			writer(value.getClass()).writeValue(buffer, value);
+			return buffer.toByteArray();
+		} finally {
+			if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+				buffers.remove();
+			}
+		}
+	}
+
+	/**
+	 * 非同步的字节缓冲区，只在单个线程内使用
+	 */
+	private static final class Buffer extends OutputStream {
+
+		private byte[] buf = new byte[4096];
+		private int count;
+
+		void reset() {
+			count = 0;
+		}
+
+		int capacity() {
+			return buf.length;
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(buf, count);
+		}
+
+		@Override
+		public void write(int b) {
+			ensureCapacity(count + 1);
+			buf[count++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			ensureCapacity(count + len);
+			System.arraycopy(b, off, buf, count, len);
+			count += len;
+		}
+
+		private void ensureCapacity(int min) {
+			if (min > buf.length) {
+				buf = Arrays.copyOf(buf, Math.max(buf.length << 1, min));
+			}
+		}
+	}
+
+}
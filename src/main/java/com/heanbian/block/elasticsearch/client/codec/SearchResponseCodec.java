@@ -0,0 +1,75 @@
+package com.heanbian.block.elasticsearch.client.codec;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.action.search.RestSearchAction;
+
+/**
+ * SearchResponse 与 JSON 字节互转，用于缓存后每次返回新的 SearchResponse。
+ * <p>
+ * 聚合和 suggest 的解析器只在 RestHighLevelClient 包内可见，这里通过反射取得一次；取不到时 {@link #isAvailable()}
+ * 为 false，调用方不应缓存 SearchResponse。
+ *
+ * @author heanbian
+ *
+ */
+public final class SearchResponseCodec {
+
+	private static final ToXContent.Params TYPED_KEYS = new ToXContent.MapParams(
+			Map.of(RestSearchAction.TYPED_KEYS_PARAM, "true"));
+	private static final NamedXContentRegistry REGISTRY = registry();
+
+	private SearchResponseCodec() {
+	}
+
+	public static boolean isAvailable() {
+		return REGISTRY != null;
+	}
+
+	public static byte[] write(SearchResponse response) {
+		try {
+			return BytesReference.toBytes(XContentHelper.toXContent(response, XContentType.JSON, TYPED_KEYS, false));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public static SearchResponse read(byte[] json) {
+		try (XContentParser parser = XContentType.JSON.xContent().createParser(REGISTRY,
+				DeprecationHandler.THROW_UNSUPPORTED_OPERATION, json)) {
+			return SearchResponse.fromXContent(parser);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static NamedXContentRegistry registry() {
+		try {
+			List<NamedXContentRegistry.Entry> entries = new ArrayList<>();
+			for (String name : new String[] { "getDefaultNamedXContents", "getProvidedNamedXContents" }) {
+				Method m = RestHighLevelClient.class.getDeclaredMethod(name);
+				m.setAccessible(true);
+				entries.addAll((List<NamedXContentRegistry.Entry>) m.invoke(null));
+			}
+			return new NamedXContentRegistry(Collections.unmodifiableList(entries));
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+}
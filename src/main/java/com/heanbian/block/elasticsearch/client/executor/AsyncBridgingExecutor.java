@@ -0,0 +1,70 @@
+package com.heanbian.block.elasticsearch.client.executor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import com.heanbian.block.elasticsearch.client.operator.AsyncOperator;
+import com.heanbian.block.elasticsearch.client.operator.Operator;
+
+/**
+ * 同时实现了 {@link AsyncOperator} 的 Operator 改走异步执行器，调用线程在 CompletableFuture 上等待结果，
+ * 重试在调度线程上退避而不是 sleep。
+ * <p>
+ * RestHighLevelClient 的同步接口在 synchronized 中 wait，会把虚拟线程固定在载体线程上；CompletableFuture 的等待通过
+ * LockSupport 挂起，不占用载体线程，并且可以被中断，中断时取消请求。其它 Operator 交给同步执行器。
+ *
+ * @author heanbian
+ *
+ */
+public class AsyncBridgingExecutor implements Executor {
+
+	private final Executor executor;
+	private final AsyncExecutor asyncExecutor;
+
+	/**
+	 * @param executor      没有异步形式的 Operator 使用的执行器
+	 * @param asyncExecutor 异步形式的 Operator 使用的执行器
+	 */
+	public AsyncBridgingExecutor(Executor executor, AsyncExecutor asyncExecutor) {
+		this.executor = executor;
+		this.asyncExecutor = asyncExecutor;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <R, S> S exec(Operator<R, S> operator, R request) {
+		if (!(operator instanceof AsyncOperator)) {
+			return executor.exec(operator, request);
+		}
+		return await(asyncExecutor.execAsync((AsyncOperator<R, S>) operator, request));
+	}
+
+	@Override
+	public void setRetryListener(RetryListener retryListener) {
+		executor.setRetryListener(retryListener);
+		asyncExecutor.setRetryListener(retryListener);
+	}
+
+	/**
+	 * 可中断地等待只属于当前调用的 future，中断时取消它并保留中断状态，异常按同步执行器的方式抛出
+	 */
+	public static <S> S await(CompletableFuture<S> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+}
@@ -0,0 +1,18 @@
+package com.heanbian.block.elasticsearch.client.executor;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.heanbian.block.elasticsearch.client.operator.AsyncOperator;
+
+@FunctionalInterface
+public interface AsyncExecutor {
+
+	<R, S> CompletableFuture<S> execAsync(AsyncOperator<R, S> operator, R request);
+
+	/**
+	 * 设置重试回调，指标统计通过它计入重试次数。会重试的执行器应当实现，包装其它执行器的应当转发给被包装者
+	 */
+	default void setRetryListener(RetryListener retryListener) {
+	}
+
+}
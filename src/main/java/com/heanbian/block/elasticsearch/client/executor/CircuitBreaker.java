@@ -0,0 +1,136 @@
+package com.heanbian.block.elasticsearch.client.executor;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * 基于滑动窗口失败率的熔断器，所有计数均为无锁的原子操作。
+ * <p>
+ * CLOSED：正常放行；失败率超过阈值时进入 OPEN，直接拒绝；经过 openDuration 后进入 HALF_OPEN，只放行一个探测请求，
+ * 成功则恢复 CLOSED，失败则重新 OPEN。
+ *
+ * @author heanbian
+ *
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private static final int BUCKETS = 10;
+
+	private final double failureRateThreshold;
+	private final int minimumRequests;
+	private final long bucketNanos;
+	private final long openNanos;
+	private final LongSupplier clock;
+
+	private final AtomicInteger state = new AtomicInteger(State.CLOSED.ordinal());
+	private final AtomicLong openedAt = new AtomicLong();
+	private final AtomicLongArray epochs = new AtomicLongArray(BUCKETS);
+	private final AtomicLongArray totals = new AtomicLongArray(BUCKETS);
+	private final AtomicLongArray failures = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * @param failureRateThreshold 失败率阈值，0~1
+	 * @param minimumRequests      窗口内请求数不少于该值时才计算失败率
+	 * @param window               统计窗口，分为10个桶滚动
+	 * @param openDuration         熔断打开后多久进入半开
+	 */
+	public CircuitBreaker(double failureRateThreshold, int minimumRequests, Duration window, Duration openDuration) {
+		this(failureRateThreshold, minimumRequests, window, openDuration, System::nanoTime);
+	}
+
+	CircuitBreaker(double failureRateThreshold, int minimumRequests, Duration window, Duration openDuration,
+			LongSupplier clock) {
+		this.clock = clock;
+		this.failureRateThreshold = failureRateThreshold;
+		this.minimumRequests = minimumRequests;
+		this.bucketNanos = Math.max(window.toNanos() / BUCKETS, 1L);
+		this.openNanos = openDuration.toNanos();
+	}
+
+	public State getState() {
+		return State.values()[state.get()];
+	}
+
+	/**
+	 * @return 是否放行本次请求
+	 */
+	public boolean tryAcquire() {
+		int s = state.get();
+		if (s == State.CLOSED.ordinal()) {
+			return true;
+		}
+		if (s == State.OPEN.ordinal() && clock.getAsLong() - openedAt.get() >= openNanos) {
+			// only one caller wins the probe
+			return state.compareAndSet(State.OPEN.ordinal(), State.HALF_OPEN.ordinal());
+		}
+		return false;
+	}
+
+	public void onSuccess() {
+		if (state.get() == State.HALF_OPEN.ordinal()) {
+			reset();
+			state.set(State.CLOSED.ordinal());
+			return;
+		}
+		record(false);
+	}
+
+	public void onFailure() {
+		if (state.get() == State.HALF_OPEN.ordinal()) {
+			open(State.HALF_OPEN);
+			return;
+		}
+		record(true);
+		if (state.get() == State.CLOSED.ordinal() && isOverThreshold()) {
+			open(State.CLOSED);
+		}
+	}
+
+	private void open(State from) {
+		openedAt.set(clock.getAsLong());
+		state.compareAndSet(from.ordinal(), State.OPEN.ordinal());
+	}
+
+	private void record(boolean failure) {
+		long epoch = Math.floorDiv(clock.getAsLong(), bucketNanos);
+		int i = (int) Math.floorMod(epoch, (long) BUCKETS);
+		long current = epochs.get(i);
+		if (current != epoch && epochs.compareAndSet(i, current, epoch)) {
+			totals.set(i, 0);
+			failures.set(i, 0);
+		}
+		totals.incrementAndGet(i);
+		if (failure) {
+			failures.incrementAndGet(i);
+		}
+	}
+
+	private boolean isOverThreshold() {
+		long oldest = Math.floorDiv(clock.getAsLong(), bucketNanos) - BUCKETS + 1;
+		long total = 0;
+		long failed = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			if (epochs.get(i) >= oldest) {
+				total += totals.get(i);
+				failed += failures.get(i);
+			}
+		}
+		return total >= minimumRequests && failed >= total * failureRateThreshold;
+	}
+
+	private void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			epochs.set(i, 0);
+			totals.set(i, 0);
+			failures.set(i, 0);
+		}
+	}
+
+}
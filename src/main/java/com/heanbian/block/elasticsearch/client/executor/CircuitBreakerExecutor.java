@@ -0,0 +1,129 @@
+package com.heanbian.block.elasticsearch.client.executor;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.rest.RestStatus;
+
+import com.heanbian.block.elasticsearch.client.operator.AsyncOperator;
+import com.heanbian.block.elasticsearch.client.operator.Operator;
+
+/**
+ * 熔断执行器，按 Operator 类型（SearchOperator、BulkOperator 等）分别统计失败率，熔断打开时直接失败。
+ *
+ * @author heanbian
+ *
+ */
+public class CircuitBreakerExecutor implements Executor {
+
+	private final Executor delegate;
+	private final Supplier<CircuitBreaker> breakerFactory;
+	private final ConcurrentMap<Class<?>, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+	public CircuitBreakerExecutor(Executor delegate) {
+		this(delegate, () -> new CircuitBreaker(0.5, 20, Duration.ofSeconds(10), Duration.ofSeconds(5)));
+	}
+
+	public CircuitBreakerExecutor(Executor delegate, Supplier<CircuitBreaker> breakerFactory) {
+		this.delegate = delegate;
+		this.breakerFactory = breakerFactory;
+	}
+
+	@Override
+	public <R, S> S exec(Operator<R, S> operator, R request) {
+		CircuitBreaker breaker = breaker(operator.getClass());
+		if (!breaker.tryAcquire()) {
+			throw new CircuitBreakerOpenException(
+					"circuit breaker is " + breaker.getState() + " for " + operator.getClass().getSimpleName());
+		}
+		Throwable failure = null;
+		try {
+			return delegate.exec(operator, request);
+		} catch (RuntimeException | Error e) {
+			failure = e;
+			throw e;
+		} finally {
+			// 无论如何都要回报结果，否则半开状态的探测名额永远不会释放
+			record(breaker, failure);
+		}
+	}
+
+	/**
+	 * 与本执行器共用熔断器的异步形式，构造模板时与本执行器一起传入，请求合并、对冲和异步桥接也会经过熔断，如
+	 * {@code new ElasticsearchTemplate(client, mapper, breaker, breaker.async(asyncExecutor))}
+	 */
+	public AsyncExecutor async(AsyncExecutor asyncDelegate) {
+		return new AsyncExecutor() {
+
+			@Override
+			public <R, S> CompletableFuture<S> execAsync(AsyncOperator<R, S> operator, R request) {
+				CircuitBreaker breaker = breaker(operator.getClass());
+				if (!breaker.tryAcquire()) {
+					CompletableFuture<S> rejected = new CompletableFuture<>();
+					rejected.completeExceptionally(new CircuitBreakerOpenException(
+							"circuit breaker is " + breaker.getState() + " for " + operator.getClass().getSimpleName()));
+					return rejected;
+				}
+				CompletableFuture<S> future;
+				try {
+					future = asyncDelegate.execAsync(operator, request);
+				} catch (RuntimeException | Error e) {
+					record(breaker, e);
+					throw e;
+				}
+				future.whenComplete((r, e) -> record(breaker,
+						e instanceof CompletionException && e.getCause() != null ? e.getCause() : e));
+				return future;
+			}
+
+			@Override
+			public void setRetryListener(RetryListener retryListener) {
+				asyncDelegate.setRetryListener(retryListener);
+			}
+		};
+	}
+
+	private void record(CircuitBreaker breaker, Throwable failure) {
+		if (failure != null && (failure instanceof Error || isFailure(failure))) {
+			breaker.onFailure();
+		} else {
+			breaker.onSuccess();
+		}
+	}
+
+	@Override
+	public void setRetryListener(RetryListener retryListener) {
+		delegate.setRetryListener(retryListener);
+	}
+
+	public CircuitBreaker breaker(Class<?> operatorType) {
+		CircuitBreaker breaker = breakers.get(operatorType);
+		if (breaker == null) {
+			breaker = breakers.computeIfAbsent(operatorType, k -> breakerFactory.get());
+		}
+		return breaker;
+	}
+
+	/**
+	 * 只有连接异常和服务端过载/错误才计入失败，404、409 等业务错误不计入
+	 */
+	protected boolean isFailure(Throwable e) {
+		for (Throwable t = e; t != null; t = t.getCause()) {
+			if (t instanceof IOException) {
+				return true;
+			}
+			if (t instanceof ElasticsearchStatusException) {
+				RestStatus status = ((ElasticsearchStatusException) t).status();
+				return status == RestStatus.TOO_MANY_REQUESTS || status.getStatus() >= 500;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,11 @@
+package com.heanbian.block.elasticsearch.client.executor;
+
+public class CircuitBreakerOpenException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public CircuitBreakerOpenException(String message) {
+		super(message);
+	}
+
+}
@@ -0,0 +1,154 @@
+package com.heanbian.block.elasticsearch.client.executor;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.client.Cancellable;
+
+import com.heanbian.block.elasticsearch.client.operator.AsyncOperator;
+
+/**
+ * 非阻塞重试：失败后在共享调度线程上按指数退避安排下一次请求，不占用调用线程。
+ *
+ * @author heanbian
+ *
+ */
+public class DefaultAsyncExecutorImpl implements AsyncExecutor {
+
+	private final int retryCount;
+	private final ExponentialBackoff backoff;
+	private final RetryBudget retryBudget;
+	private final long deadlineNanos;
+	private final ScheduledExecutorService scheduler;
+	private volatile RetryListener retryListener;
+
+	public DefaultAsyncExecutorImpl(int retryCount) {
+		this(retryCount, ExponentialBackoff.defaultBackoff(), RetryBudget.unlimited(), Duration.ofSeconds(30),
+				SharedScheduler.INSTANCE);
+	}
+
+	public DefaultAsyncExecutorImpl(int retryCount, ExponentialBackoff backoff, RetryBudget retryBudget,
+			Duration deadline, ScheduledExecutorService scheduler) {
+		this.retryCount = retryCount;
+		this.backoff = backoff;
+		this.retryBudget = retryBudget;
+		this.deadlineNanos = deadline.toNanos();
+		this.scheduler = scheduler;
+	}
+
+	public static ScheduledExecutorService sharedScheduler() {
+		return SharedScheduler.INSTANCE;
+	}
+
+	@Override
+	public void setRetryListener(RetryListener retryListener) {
+		this.retryListener = retryListener;
+	}
+
+	@Override
+	public <R, S> CompletableFuture<S> execAsync(AsyncOperator<R, S> operator, R request) {
+		retryBudget.onRequest();
+		Attempt<R, S> attempt = new Attempt<>(operator, request, System.nanoTime() + deadlineNanos);
+		attempt.run();
+		return attempt.future;
+	}
+
+	private final class Attempt<R, S> implements Runnable, ActionListener<S> {
+
+		private final CompletableFuture<S> future = new CompletableFuture<>();
+		private final AsyncOperator<R, S> operator;
+		private final R request;
+		private final long deadline;
+
+		private volatile Cancellable inFlight;
+		private volatile ScheduledFuture<?> scheduled;
+		private int attempts;
+
+		Attempt(AsyncOperator<R, S> operator, R request, long deadline) {
+			this.operator = operator;
+			this.request = request;
+			this.deadline = deadline;
+			future.whenComplete((r, e) -> {
+				if (future.isCancelled()) {
+					cancelPending();
+				}
+			});
+		}
+
+		@Override
+		public void run() {
+			if (future.isDone()) {
+				return;
+			}
+			attempts++;
+			try {
+				inFlight = operator.operator(request, this);
+			} catch (RuntimeException e) {
+				onFailure(e);
+				return;
+			}
+			if (future.isCancelled()) {
+				cancelPending();
+			}
+		}
+
+		@Override
+		public void onResponse(S response) {
+			future.complete(response);
+		}
+
+		@Override
+		public void onFailure(Exception e) {
+			if (future.isDone()) {
+				return;
+			}
+			if (!(e instanceof IOException) || attempts >= retryCount) {
+				future.completeExceptionally(e);
+				return;
+			}
+			long delay = backoff.delayMillis(attempts - 1);
+			if (System.nanoTime() + MILLISECONDS.toNanos(delay) - deadline > 0 || !retryBudget.tryRetry()) {
+				future.completeExceptionally(e);
+				return;
+			}
+			RetryListener listener = retryListener;
+			if (listener != null) {
+				listener.onRetry(operator, attempts, e);
+			}
+			try {
+				scheduled = scheduler.schedule(this, delay, MILLISECONDS);
+			} catch (RejectedExecutionException re) {
+				future.completeExceptionally(e);
+			}
+		}
+
+		private void cancelPending() {
+			ScheduledFuture<?> s = scheduled;
+			if (s != null) {
+				s.cancel(false);
+			}
+			Cancellable c = inFlight;
+			if (c != null) {
+				c.cancel();
+			}
+		}
+	}
+
+	private static final class SharedScheduler {
+
+		static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "es-async-executor-scheduler");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+}
@@ -7,25 +7,51 @@ import com.heanbian.block.elasticsearch.client.operator.Operator;
 public class DefaultExecutorImpl implements Executor {
 
 	private int retryCount;
+	private ExponentialBackoff backoff;
+	private RetryBudget retryBudget;
+	private volatile RetryListener retryListener;
 
 	public DefaultExecutorImpl(int retryCount) {
+		this(retryCount, ExponentialBackoff.defaultBackoff(), RetryBudget.unlimited());
+	}
+
+	public DefaultExecutorImpl(int retryCount, ExponentialBackoff backoff, RetryBudget retryBudget) {
 		this.retryCount = retryCount;
+		this.backoff = backoff;
+		this.retryBudget = retryBudget;
+	}
+
+	@Override
+	public void setRetryListener(RetryListener retryListener) {
+		this.retryListener = retryListener;
 	}
 
 	@Override
 	public <R, S> S exec(Operator<R, S> operator, R request) {
 		IOException internal = null;
+		retryBudget.onRequest();
 		for (int i = 0; i < retryCount; i++) {
 			try {
 				return operator.operator(request);
 			} catch (IOException e) {
 				internal = e;
-				try {
-					Thread.sleep(1000L);
-				} catch (InterruptedException e1) {
+				if (i + 1 < retryCount) {
+					if (!retryBudget.tryRetry()) {
+						break;
+					}
+					RetryListener listener = retryListener;
+					if (listener != null) {
+						listener.onRetry(operator, i + 1, e);
+					}
+					try {
+						Thread.sleep(backoff.delayMillis(i));
+					} catch (InterruptedException e1) {
+						Thread.currentThread().interrupt();
+						break;
+					}
 				}
 			}
 		}
 		throw new RuntimeException(internal);
 	}
-}
\ No newline at end of file
+}
@@ -7,4 +7,10 @@ public interface Executor {
 
 	<R, S> S exec(Operator<R, S> operator, R request);
 
+	/**
+	 * 设置重试回调，指标统计通过它计入重试次数。会重试的执行器应当实现，包装其它执行器的应当转发给被包装者
+	 */
+	default void setRetryListener(RetryListener retryListener) {
+	}
+
 }
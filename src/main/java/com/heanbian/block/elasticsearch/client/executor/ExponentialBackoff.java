@@ -0,0 +1,41 @@
+package com.heanbian.block.elasticsearch.client.executor;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 指数退避，每次等待时间在 [上限/2, 上限] 之间随机，避免大量请求同时重试
+ *
+ * @author heanbian
+ *
+ */
+public class ExponentialBackoff {
+
+	private final long initialMillis;
+	private final long maxMillis;
+	private final double multiplier;
+
+	public ExponentialBackoff(Duration initial, Duration max, double multiplier) {
+		if (initial.isNegative() || max.compareTo(initial) < 0 || multiplier < 1.0) {
+			throw new IllegalArgumentException("invalid backoff: initial=" + initial + ", max=" + max
+					+ ", multiplier=" + multiplier);
+		}
+		this.initialMillis = initial.toMillis();
+		this.maxMillis = max.toMillis();
+		this.multiplier = multiplier;
+	}
+
+	public static ExponentialBackoff defaultBackoff() {
+		return new ExponentialBackoff(Duration.ofMillis(100), Duration.ofSeconds(5), 2.0);
+	}
+
+	/**
+	 * @param retry 第几次重试，从0开始
+	 */
+	public long delayMillis(int retry) {
+		double cap = Math.min(maxMillis, initialMillis * Math.pow(multiplier, retry));
+		long half = (long) (cap / 2);
+		return half + ThreadLocalRandom.current().nextLong((long) cap - half + 1);
+	}
+
+}
@@ -0,0 +1,267 @@
+package com.heanbian.block.elasticsearch.client.executor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.http.HttpHost;
+
+import com.heanbian.block.elasticsearch.client.metrics.LatencyHistogram;
+import com.heanbian.block.elasticsearch.client.node.LeastLoadedNodeSelector;
+import com.heanbian.block.elasticsearch.client.operator.AsyncOperator;
+import com.heanbian.block.elasticsearch.client.operator.Operator;
+import com.heanbian.block.elasticsearch.client.operator.ReadOperator;
+
+/**
+ * 对冲请求：{@link ReadOperator} 的请求超过该 Operator 历史延迟的指定分位仍未返回时，再发送一次相同的请求，
+ * 先返回的结果生效，另一个被取消。对冲数受预算限制，其它 Operator 直接交给被装饰的执行器。
+ * <p>
+ * 同步调用的只读请求也走异步路径，因此异步执行器应与同步执行器采用相同的策略（熔断等）。
+ * 对冲延迟取自首次请求成功返回的延迟，不含对冲胜出的结果。使用 {@link LeastLoadedNodeSelector} 时对冲请求避开首次请求的节点，
+ * 否则依赖 RestClient 的轮询发往下一个节点。
+ *
+ * @author heanbian
+ *
+ */
+public class HedgingExecutor implements Executor, AsyncExecutor {
+
+	private static final long REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final Executor executor;
+	private final AsyncExecutor asyncExecutor;
+	private final LeastLoadedNodeSelector nodeSelector;
+	private final double percentile;
+	private final long minDelayNanos;
+	private final int minSamples;
+	private final RetryBudget budget;
+	private final ScheduledExecutorService scheduler;
+	private final ConcurrentHashMap<Class<?>, Stats> stats = new ConcurrentHashMap<>();
+	private final LongAdder hedges = new LongAdder();
+	private final LongAdder hedgeWins = new LongAdder();
+	private final LongAdder rejectedHedges = new LongAdder();
+
+	/**
+	 * @param nodeSelector 用于让对冲请求避开首次请求的节点，可以为null
+	 */
+	public HedgingExecutor(Executor executor, AsyncExecutor asyncExecutor, HedgingOptions options,
+			LeastLoadedNodeSelector nodeSelector) {
+		this.executor = executor;
+		this.asyncExecutor = asyncExecutor;
+		this.nodeSelector = nodeSelector;
+		this.percentile = options.getPercentile();
+		this.minDelayNanos = options.getMinDelay().toNanos();
+		this.minSamples = options.getMinSamples();
+		this.budget = new RetryBudget(options.getMaxHedgeRatio(), 0);
+		this.scheduler = DefaultAsyncExecutorImpl.sharedScheduler();
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <R, S> S exec(Operator<R, S> operator, R request) {
+		if (!(operator instanceof AsyncOperator) || !isHedgeable(operator, request)) {
+			return executor.exec(operator, request);
+		}
+		return AsyncBridgingExecutor.await(execAsync((AsyncOperator<R, S>) operator, request));
+	}
+
+	@Override
+	public <R, S> CompletableFuture<S> execAsync(AsyncOperator<R, S> operator, R request) {
+		if (!isHedgeable(operator, request)) {
+			return asyncExecutor.execAsync(operator, request);
+		}
+		Stats s = stats.computeIfAbsent(operator.getClass(), k -> new Stats());
+		budget.onRequest();
+		long delay = s.delayNanos();
+		Race<R, S> race = new Race<>(operator, request, s);
+		race.start(delay);
+		return race.result;
+	}
+
+	@Override
+	public void setRetryListener(RetryListener retryListener) {
+		executor.setRetryListener(retryListener);
+		asyncExecutor.setRetryListener(retryListener);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <R> boolean isHedgeable(Object operator, R request) {
+		return operator instanceof ReadOperator && ((ReadOperator<R>) operator).isIdempotent(request);
+	}
+
+	/**
+	 * 发出的对冲请求数
+	 */
+	public long getHedgeCount() {
+		return hedges.sum();
+	}
+
+	/**
+	 * 对冲请求先于首次请求返回的次数
+	 */
+	public long getHedgeWinCount() {
+		return hedgeWins.sum();
+	}
+
+	/**
+	 * 因超出预算而没有发出的对冲请求数
+	 */
+	public long getRejectedHedgeCount() {
+		return rejectedHedges.sum();
+	}
+
+	/**
+	 * 该类 Operator 首次请求成功返回的延迟分布，对冲延迟由它计算；还没有请求时为null
+	 */
+	public LatencyHistogram getPrimaryLatency(Class<?> operatorClass) {
+		Stats s = stats.get(operatorClass);
+		return s == null ? null : s.histogram;
+	}
+
+	private final class Race<R, S> {
+
+		final CompletableFuture<S> result = new CompletableFuture<>();
+		final AsyncOperator<R, S> operator;
+		final R request;
+		final Stats stats;
+		final long start = System.nanoTime();
+		final AtomicInteger pending = new AtomicInteger(1);
+		final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+
+		volatile CompletableFuture<S> primary;
+		volatile CompletableFuture<S> hedge;
+		volatile HttpHost primaryHost;
+		volatile HttpHost hedgeHost;
+		volatile ScheduledFuture<?> scheduled;
+
+		Race(AsyncOperator<R, S> operator, R request, Stats stats) {
+			this.operator = operator;
+			this.request = request;
+			this.stats = stats;
+			result.whenComplete((r, e) -> {
+				ScheduledFuture<?> f = scheduled;
+				if (f != null) {
+					f.cancel(false);
+				}
+				cancelIfPending(primary, primaryHost);
+				cancelIfPending(hedge, hedgeHost);
+			});
+		}
+
+		void start(long delay) {
+			if (delay >= 0) {
+				pending.incrementAndGet();// 对冲请求的名额，不发送时释放
+				try {
+					scheduled = scheduler.schedule(this::sendHedge, delay, TimeUnit.NANOSECONDS);
+				} catch (RejectedExecutionException e) {
+					pending.decrementAndGet();
+				}
+			}
+			CompletableFuture<S> f = send(null);
+			primaryHost = lastSelected();
+			primary = f;
+			if (result.isDone()) {
+				cancelIfPending(f, primaryHost);
+			}
+			f.whenComplete((r, e) -> {
+				if (e == null) {// 只记录首次请求的延迟，记录胜出的延迟会让分位数越来越低、对冲越来越多
+					stats.histogram.record(System.nanoTime() - start);
+				}
+				ScheduledFuture<?> s = scheduled;
+				if (e != null && s != null && s.cancel(false)) {// 对冲请求还没发送，不再等待
+					pending.decrementAndGet();
+				}
+				onComplete(r, e, false);
+			});
+		}
+
+		void sendHedge() {
+			if (result.isDone()) {
+				return;
+			}
+			if (!budget.tryRetry()) {
+				rejectedHedges.increment();
+				onComplete(null, null, true);
+				return;
+			}
+			hedges.increment();
+			CompletableFuture<S> f = send(primaryHost);
+			hedgeHost = lastSelected();
+			hedge = f;
+			if (result.isDone()) {
+				cancelIfPending(f, hedgeHost);
+			}
+			f.whenComplete((r, e) -> {
+				if (e == null && !result.isDone()) {
+					hedgeWins.increment();
+				}
+				onComplete(r, e, false);
+			});
+		}
+
+		CompletableFuture<S> send(HttpHost avoid) {
+			try {
+				return nodeSelector == null ? asyncExecutor.execAsync(operator, request)
+						: nodeSelector.avoiding(avoid, () -> asyncExecutor.execAsync(operator, request));
+			} catch (RuntimeException e) {
+				CompletableFuture<S> failed = new CompletableFuture<>();
+				failed.completeExceptionally(e);
+				return failed;
+			}
+		}
+
+		/**
+		 * @param skipped 对冲请求因预算不足没有发送
+		 */
+		void onComplete(S response, Throwable e, boolean skipped) {
+			if (!skipped && e == null) {
+				result.complete(response);
+				return;
+			}
+			if (e != null && !result.isDone() && !firstFailure.compareAndSet(null, e) && firstFailure.get() != e) {
+				firstFailure.get().addSuppressed(e);
+			}
+			if (pending.decrementAndGet() == 0) {// 都失败时返回首个失败
+				result.completeExceptionally(firstFailure.get() != null ? firstFailure.get() : e);
+			}
+		}
+
+		private HttpHost lastSelected() {
+			return nodeSelector == null ? null : nodeSelector.lastSelected();
+		}
+
+		private void cancelIfPending(CompletableFuture<S> f, HttpHost host) {
+			if (f != null && !f.isDone() && f.cancel(true) && nodeSelector != null && host != null) {
+				nodeSelector.release(host);
+			}
+		}
+	}
+
+	private final class Stats {
+
+		final LatencyHistogram histogram = new LatencyHistogram();
+		volatile long delayNanos = -1L;
+		volatile long computedAt = System.nanoTime() - REFRESH_NANOS;
+
+		/**
+		 * @return 对冲延迟，样本不足时为-1表示不对冲
+		 */
+		long delayNanos() {
+			long now = System.nanoTime();
+			if (now - computedAt < REFRESH_NANOS) {
+				return delayNanos;
+			}
+			computedAt = now;
+			long delay = histogram.getCount() < minSamples ? -1L
+					: Math.max(TimeUnit.MICROSECONDS.toNanos(histogram.getPercentileMicros(percentile)), minDelayNanos);
+			delayNanos = delay;
+			return delay;
+		}
+	}
+
+}
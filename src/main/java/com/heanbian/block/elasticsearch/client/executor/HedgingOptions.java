@@ -0,0 +1,63 @@
+package com.heanbian.block.elasticsearch.client.executor;
+
+import java.time.Duration;
+
+public class HedgingOptions {
+
+	/**
+	 * 首次请求超过该分位（0 到 100）的历史延迟仍未返回时发送对冲请求
+	 */
+	private double percentile = 95.0;
+
+	/**
+	 * 对冲请求数占请求数的上限
+	 */
+	private double maxHedgeRatio = 0.05;
+
+	/**
+	 * 对冲延迟的下限
+	 */
+	private Duration minDelay = Duration.ofMillis(1);
+
+	/**
+	 * 每个 Operator 累计多少个样本后才开始对冲
+	 */
+	private int minSamples = 100;
+
+	public double getPercentile() {
+		return percentile;
+	}
+
+	public HedgingOptions setPercentile(double percentile) {
+		this.percentile = percentile;
+		return this;
+	}
+
+	public double getMaxHedgeRatio() {
+		return maxHedgeRatio;
+	}
+
+	public HedgingOptions setMaxHedgeRatio(double maxHedgeRatio) {
+		this.maxHedgeRatio = maxHedgeRatio;
+		return this;
+	}
+
+	public Duration getMinDelay() {
+		return minDelay;
+	}
+
+	public HedgingOptions setMinDelay(Duration minDelay) {
+		this.minDelay = minDelay;
+		return this;
+	}
+
+	public int getMinSamples() {
+		return minSamples;
+	}
+
+	public HedgingOptions setMinSamples(int minSamples) {
+		this.minSamples = minSamples;
+		return this;
+	}
+
+}
@@ -0,0 +1,142 @@
+package com.heanbian.block.elasticsearch.client.executor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * 把一个时间窗口内的单个请求合并成一次批量请求，相同的 key 共享同一个结果。
+ * 窗口内第一个请求到达时开始计时，到期或攒满 maxBatchSize 时发送。
+ * 每批有自己的编号，攒满提前发送后，上一个窗口的定时任务不会把下一批提前发出。
+ *
+ * @author heanbian
+ *
+ */
+public class RequestCoalescer<K, V> {
+
+	private final Function<List<K>, CompletableFuture<Map<K, V>>> loader;
+	private final long windowNanos;
+	private final int maxBatchSize;
+	private final ScheduledExecutorService scheduler;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private Map<K, CompletableFuture<V>> pending = new LinkedHashMap<>();
+	private long generation;
+
+	/**
+	 * @param loader       批量加载，返回结果中没有的 key 以null完成
+	 * @param window       合并窗口
+	 * @param maxBatchSize 单批最多的 key 数
+	 * @param scheduler    窗口到期的调度线程
+	 */
+	public RequestCoalescer(Function<List<K>, CompletableFuture<Map<K, V>>> loader, Duration window,
+			int maxBatchSize, ScheduledExecutorService scheduler) {
+		if (maxBatchSize <= 0) {
+			throw new IllegalArgumentException("maxBatchSize must be positive");
+		}
+		this.loader = loader;
+		this.windowNanos = window.toNanos();
+		this.maxBatchSize = maxBatchSize;
+		this.scheduler = scheduler;
+	}
+
+	public CompletableFuture<V> submit(K key) {
+		CompletableFuture<V> future;
+		Map<K, CompletableFuture<V>> full = null;
+		boolean first;
+		final long batch;
+		lock.lock();
+		try {
+			future = pending.get(key);
+			if (future != null) {
+				return future;
+			}
+			future = new CompletableFuture<>();
+			first = pending.isEmpty();
+			batch = generation;
+			pending.put(key, future);
+			if (pending.size() >= maxBatchSize) {
+				full = detach();
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (full != null) {
+			dispatch(full);
+		} else if (first) {
+			try {
+				scheduler.schedule(() -> flush(batch), windowNanos, TimeUnit.NANOSECONDS);
+			} catch (RejectedExecutionException e) {
+				flush(batch);
+			}
+		}
+		return future;
+	}
+
+	/**
+	 * 立即发送当前窗口内的请求
+	 */
+	public void flush() {
+		Map<K, CompletableFuture<V>> batch;
+		lock.lock();
+		try {
+			if (pending.isEmpty()) {
+				return;
+			}
+			batch = detach();
+		} finally {
+			lock.unlock();
+		}
+		dispatch(batch);
+	}
+
+	/**
+	 * 窗口到期：只发送计时开始时的那一批，已经提前发送时不做任何事
+	 */
+	private void flush(long expected) {
+		Map<K, CompletableFuture<V>> batch;
+		lock.lock();
+		try {
+			if (generation != expected || pending.isEmpty()) {
+				return;
+			}
+			batch = detach();
+		} finally {
+			lock.unlock();
+		}
+		dispatch(batch);
+	}
+
+	private Map<K, CompletableFuture<V>> detach() {
+		Map<K, CompletableFuture<V>> batch = pending;
+		pending = new LinkedHashMap<>();
+		generation++;
+		return batch;
+	}
+
+	private void dispatch(Map<K, CompletableFuture<V>> batch) {
+		CompletableFuture<Map<K, V>> result;
+		try {
+			result = loader.apply(new ArrayList<>(batch.keySet()));
+		} catch (RuntimeException e) {
+			batch.values().forEach(f -> f.completeExceptionally(e));
+			return;
+		}
+		result.whenComplete((values, e) -> batch.forEach((k, f) -> {
+			if (e != null) {
+				f.completeExceptionally(e);
+			} else {
+				f.complete(values.get(k));
+			}
+		}));
+	}
+
+}
@@ -0,0 +1,107 @@
+package com.heanbian.block.elasticsearch.client.executor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 重试预算：每个请求存入 ratio 个令牌，每次重试取出一个，另外每秒固定补充 minRetriesPerSecond 个，
+ * 这样集群故障时重试量不会超过请求量的 ratio 倍。无锁实现，可在多个执行器之间共享。
+ *
+ * @author heanbian
+ *
+ */
+public class RetryBudget {
+
+	private static final long SCALE = 1000L;
+
+	private final long depositPerRequest;
+	private final long refillPerSecond;
+	private final long capacity;
+	private final long maxElapsedNanos;
+	private final AtomicLong balance;
+	private final AtomicLong lastRefill;
+	private final LongSupplier clock;
+
+	public RetryBudget(double ratio, int minRetriesPerSecond) {
+		this(ratio, minRetriesPerSecond, System::nanoTime);
+	}
+
+	RetryBudget(double ratio, int minRetriesPerSecond, LongSupplier clock) {
+		if (ratio < 0 || minRetriesPerSecond < 0) {
+			throw new IllegalArgumentException("ratio and minRetriesPerSecond must not be negative");
+		}
+		this.depositPerRequest = (long) (ratio * SCALE);
+		this.refillPerSecond = minRetriesPerSecond * SCALE;
+		this.capacity = Math.max(refillPerSecond, 100 * SCALE);
+		// 超过该时长的空闲已足够补满，截断后再相乘，避免长时间无重试后溢出
+		this.maxElapsedNanos = refillPerSecond == 0 ? 0L
+				: (long) Math.ceil((double) capacity / refillPerSecond * 1_000_000_000L);
+		this.balance = new AtomicLong(refillPerSecond);
+		this.clock = clock;
+		this.lastRefill = new AtomicLong(clock.getAsLong());
+	}
+
+	/**
+	 * 重试不超过请求量的10%，每秒至少允许10次
+	 */
+	public static RetryBudget defaultBudget() {
+		return new RetryBudget(0.1, 10);
+	}
+
+	/**
+	 * 不限制重试
+	 */
+	public static RetryBudget unlimited() {
+		return new RetryBudget(0, 0) {
+
+			@Override
+			public void onRequest() {
+			}
+
+			@Override
+			public boolean tryRetry() {
+				return true;
+			}
+		};
+	}
+
+	public void onRequest() {
+		deposit(depositPerRequest);
+	}
+
+	public boolean tryRetry() {
+		refill();
+		for (;;) {
+			long b = balance.get();
+			if (b < SCALE) {
+				return false;
+			}
+			if (balance.compareAndSet(b, b - SCALE)) {
+				return true;
+			}
+		}
+	}
+
+	private void refill() {
+		if (refillPerSecond == 0) {
+			return;
+		}
+		long now = clock.getAsLong();
+		long last = lastRefill.get();
+		long elapsed = now - last;
+		if (elapsed < 1_000_000L) {
+			return;
+		}
+		if (lastRefill.compareAndSet(last, now)) {
+			deposit((long) (refillPerSecond * (Math.min(elapsed, maxElapsedNanos) / 1e9)));
+		}
+	}
+
+	private void deposit(long amount) {
+		if (amount <= 0) {
+			return;
+		}
+		balance.accumulateAndGet(amount, (b, a) -> Math.min(b + a, capacity));
+	}
+
+}
@@ -0,0 +1,19 @@
+package com.heanbian.block.elasticsearch.client.executor;
+
+/**
+ * 执行器每次决定重试时的回调，在退避等待之前调用
+ *
+ * @author heanbian
+ *
+ */
+@FunctionalInterface
+public interface RetryListener {
+
+	/**
+	 * @param operator 重试的操作
+	 * @param attempt  已失败的次数
+	 * @param cause    本次失败的原因
+	 */
+	void onRetry(Object operator, int attempt, Exception cause);
+
+}
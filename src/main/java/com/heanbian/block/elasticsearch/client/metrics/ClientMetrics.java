@@ -0,0 +1,184 @@
+package com.heanbian.block.elasticsearch.client.metrics;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+import org.apache.http.ConnectionReuseStrategy;
+import org.apache.http.HttpConnectionMetrics;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.impl.DefaultConnectionReuseStrategy;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.nio.NHttpConnection;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkResponse;
+
+import com.heanbian.block.elasticsearch.client.executor.RetryListener;
+
+/**
+ * 客户端指标：每个 Operator 的延迟直方图、成功/失败/重试次数，以及收发字节数、批量条目失败数和序列化耗时。
+ * 所有计数都是分条累加器，可以在热路径上直接调用。
+ *
+ * @author heanbian
+ *
+ */
+public class ClientMetrics implements RetryListener {
+
+	private static final String COUNTED = ClientMetrics.class.getName() + ".counted";
+
+	private final ConcurrentHashMap<String, OperatorMetrics> operators = new ConcurrentHashMap<>();
+
+	private final LongAdder bytesSent = new LongAdder();
+	private final LongAdder bytesReceived = new LongAdder();
+	private final LongAdder bulkItems = new LongAdder();
+	private final LongAdder bulkItemFailures = new LongAdder();
+	private final LongAdder serializedBytes = new LongAdder();
+	private final LatencyHistogram serialization = new LatencyHistogram();
+	private final LatencyHistogram deserialization = new LatencyHistogram();
+
+	public OperatorMetrics operator(Object operator) {
+		String name = operator.getClass().getSimpleName();
+		OperatorMetrics m = operators.get(name);
+		return m != null ? m : operators.computeIfAbsent(name, OperatorMetrics::new);
+	}
+
+	@Override
+	public void onRetry(Object operator, int attempt, Exception cause) {
+		operator(operator).recordRetry();
+	}
+
+	public void recordBulk(BulkResponse response) {
+		int failed = 0;
+		for (BulkItemResponse item : response) {
+			if (item.isFailed()) {
+				failed++;
+			}
+		}
+		bulkItems.add(response.getItems().length);
+		bulkItemFailures.add(failed);
+	}
+
+	public void recordSerialization(long nanos, long bytes) {
+		serialization.record(nanos);
+		serializedBytes.add(bytes);
+	}
+
+	public void recordDeserialization(long nanos) {
+		deserialization.record(nanos);
+	}
+
+	/**
+	 * 给 HTTP 客户端加上收发字节数的统计，如 {@code builder.setHttpClientConfigCallback(metrics::instrument)}。
+	 * <p>
+	 * 统计的是连接上实际收发的字节数（含报文头，分块传输、压缩和流式的报文体都能计入），而不是 Content-Length：
+	 * 异步客户端在拦截器之前就已经拿到了请求体，响应体也不经过 HttpEntity，包装 entity 看不到这些字节。
+	 * 每个连接记录已计入的位置，收到响应头时和交换结束时计入增量。交换结束的时机借用连接复用策略判断，
+	 * 因此会替换掉 builder 上之前设置的 ConnectionReuseStrategy（默认策略保持不变）
+	 */
+	public HttpAsyncClientBuilder instrument(HttpAsyncClientBuilder builder) {
+		HttpResponseInterceptor received = (response, context) -> count(context);
+		ConnectionReuseStrategy reuse = (response, context) -> {
+			count(context);
+			return DefaultConnectionReuseStrategy.INSTANCE.keepAlive(response, context);
+		};
+		return builder.addInterceptorLast(received).setConnectionReuseStrategy(reuse);
+	}
+
+	private void count(HttpContext context) {
+		Object conn = context.getAttribute(HttpCoreContext.HTTP_CONNECTION);
+		if (conn instanceof NHttpConnection) {
+			NHttpConnection c = (NHttpConnection) conn;
+			HttpContext connContext = c.getContext();
+			Counted counted = (Counted) connContext.getAttribute(COUNTED);
+			if (counted == null) {
+				counted = new Counted();
+				connContext.setAttribute(COUNTED, counted);
+			}
+			counted.flush(c.getMetrics(), bytesSent, bytesReceived);
+		}
+	}
+
+	/**
+	 * 一个连接上已计入的字节数，连接同一时刻只处理一个交换
+	 */
+	private static final class Counted {
+
+		private long sent;
+		private long received;
+
+		synchronized void flush(HttpConnectionMetrics metrics, LongAdder bytesSent, LongAdder bytesReceived) {
+			long s = metrics.getSentBytesCount();
+			long r = metrics.getReceivedBytesCount();
+			bytesSent.add(s - sent);
+			bytesReceived.add(r - received);
+			sent = s;
+			received = r;
+		}
+	}
+
+	public Collection<OperatorMetrics> getOperators() {
+		return operators.values();
+	}
+
+	public long getBytesSent() {
+		return bytesSent.sum();
+	}
+
+	public long getBytesReceived() {
+		return bytesReceived.sum();
+	}
+
+	public long getBulkItemCount() {
+		return bulkItems.sum();
+	}
+
+	public long getBulkItemFailureCount() {
+		return bulkItemFailures.sum();
+	}
+
+	public long getSerializedBytes() {
+		return serializedBytes.sum();
+	}
+
+	public LatencyHistogram getSerialization() {
+		return serialization;
+	}
+
+	public LatencyHistogram getDeserialization() {
+		return deserialization;
+	}
+
+	/**
+	 * 以扁平的指标名输出当前值，供导出到 Micrometer、Prometheus 等指标注册表。
+	 * 计数类指标单调递增，延迟单位为微秒
+	 */
+	public void export(BiConsumer<String, Number> sink) {
+		for (OperatorMetrics m : operators.values()) {
+			String prefix = "elasticsearch.operator." + m.getName() + ".";
+			sink.accept(prefix + "success", m.getSuccessCount());
+			sink.accept(prefix + "failure", m.getFailureCount());
+			sink.accept(prefix + "retry", m.getRetryCount());
+			exportHistogram(prefix + "latency", m.getLatency(), sink);
+		}
+		sink.accept("elasticsearch.http.bytes.sent", getBytesSent());
+		sink.accept("elasticsearch.http.bytes.received", getBytesReceived());
+		sink.accept("elasticsearch.bulk.items", getBulkItemCount());
+		sink.accept("elasticsearch.bulk.item.failures", getBulkItemFailureCount());
+		sink.accept("elasticsearch.serialization.bytes", getSerializedBytes());
+		exportHistogram("elasticsearch.serialization", serialization, sink);
+		exportHistogram("elasticsearch.deserialization", deserialization, sink);
+	}
+
+	private static void exportHistogram(String name, LatencyHistogram h, BiConsumer<String, Number> sink) {
+		sink.accept(name + ".count", h.getCount());
+		sink.accept(name + ".mean", h.getMeanMicros());
+		sink.accept(name + ".p50", h.getPercentileMicros(50));
+		sink.accept(name + ".p99", h.getPercentileMicros(99));
+		sink.accept(name + ".p999", h.getPercentileMicros(99.9));
+		sink.accept(name + ".max", h.getMaxMicros());
+	}
+
+}
@@ -0,0 +1,99 @@
+package com.heanbian.block.elasticsearch.client.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HDR 风格的对数-线性延迟直方图，精度约 3%，范围 1 微秒到约 71 分钟。
+ * 桶按线程分条存放，记录只有一次原子加，不加锁。
+ *
+ * @author heanbian
+ *
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 5;
+	private static final int SUB = 1 << SUB_BITS;
+	private static final int MAX_EXP = 32;
+	private static final int BUCKETS = ((MAX_EXP - SUB_BITS + 1) << SUB_BITS) + SUB;
+	private static final int STRIPES = 4;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS * STRIPES);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sumMicros = new LongAdder();
+	private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0L);
+
+	public void record(long nanos) {
+		long micros = Math.max(TimeUnit.NANOSECONDS.toMicros(nanos), 0L);
+		int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+		buckets.incrementAndGet(stripe * BUCKETS + index(micros));
+		count.increment();
+		sumMicros.add(micros);
+		maxMicros.accumulate(micros);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getMaxMicros() {
+		return maxMicros.get();
+	}
+
+	public double getMeanMicros() {
+		long n = count.sum();
+		return n == 0 ? 0.0 : (double) sumMicros.sum() / n;
+	}
+
+	/**
+	 * @param percentile 0 到 100
+	 * @return 对应分位的延迟上界（微秒），没有记录时为0
+	 */
+	public long getPercentileMicros(double percentile) {
+		long[] merged = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			for (int s = 0; s < STRIPES; s++) {
+				merged[i] += buckets.get(s * BUCKETS + i);
+			}
+			total += merged[i];
+		}
+		if (total == 0) {
+			return 0L;
+		}
+		long rank = (long) Math.ceil(total * Math.min(Math.max(percentile, 0.0), 100.0) / 100.0);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += merged[i];
+			if (seen >= Math.max(rank, 1L)) {
+				return Math.min(upperBound(i), maxMicros.get());
+			}
+		}
+		return maxMicros.get();
+	}
+
+	static int index(long micros) {
+		if (micros < SUB) {
+			return (int) micros;
+		}
+		int exp = 63 - Long.numberOfLeadingZeros(micros);
+		if (exp > MAX_EXP) {
+			return BUCKETS - 1;
+		}
+		int shift = exp - SUB_BITS;
+		return ((exp - SUB_BITS + 1) << SUB_BITS) + (int) ((micros >>> shift) & (SUB - 1));
+	}
+
+	static long upperBound(int index) {
+		if (index < SUB) {
+			return index;
+		}
+		int exp = (index >>> SUB_BITS) + SUB_BITS - 1;
+		int shift = exp - SUB_BITS;
+		long lower = (1L << exp) + ((long) (index & (SUB - 1)) << shift);
+		return lower + (1L << shift) - 1;
+	}
+
+}
@@ -0,0 +1,56 @@
+package com.heanbian.block.elasticsearch.client.metrics;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.elasticsearch.action.bulk.BulkResponse;
+
+import com.heanbian.block.elasticsearch.client.executor.AsyncExecutor;
+import com.heanbian.block.elasticsearch.client.executor.RetryListener;
+import com.heanbian.block.elasticsearch.client.operator.AsyncOperator;
+
+/**
+ * 异步执行器的统计装饰，耗时从提交到 future 完成
+ *
+ * @author heanbian
+ *
+ */
+public class MetricsAsyncExecutor implements AsyncExecutor {
+
+	private final AsyncExecutor delegate;
+	private final ClientMetrics metrics;
+
+	public MetricsAsyncExecutor(AsyncExecutor delegate, ClientMetrics metrics) {
+		this.delegate = delegate;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public <R, S> CompletableFuture<S> execAsync(AsyncOperator<R, S> operator, R request) {
+		OperatorMetrics m = metrics.operator(operator);
+		long start = System.nanoTime();
+		CompletableFuture<S> future;
+		try {
+			future = delegate.execAsync(operator, request);
+		} catch (RuntimeException | Error e) {
+			m.recordFailure(System.nanoTime() - start);
+			throw e;
+		}
+		future.whenComplete((response, e) -> {
+			if (e != null) {
+				m.recordFailure(System.nanoTime() - start);
+				return;
+			}
+			m.recordSuccess(System.nanoTime() - start);
+			if (response instanceof BulkResponse) {
+				metrics.recordBulk((BulkResponse) response);
+			}
+		});
+		return future;
+	}
+
+	@Override
+	public void setRetryListener(RetryListener retryListener) {
+		delegate.setRetryListener(retryListener);
+	}
+
+}
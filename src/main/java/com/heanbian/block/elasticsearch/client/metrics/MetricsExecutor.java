@@ -0,0 +1,62 @@
+package com.heanbian.block.elasticsearch.client.metrics;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.elasticsearch.action.bulk.BulkResponse;
+
+import com.heanbian.block.elasticsearch.client.executor.Executor;
+import com.heanbian.block.elasticsearch.client.executor.RetryListener;
+import com.heanbian.block.elasticsearch.client.operator.Operator;
+
+/**
+ * 记录每次调用耗时和结果的执行器装饰，如 {@code new MetricsExecutor(new DefaultExecutorImpl(5), metrics)}。
+ * 返回 {@link CompletableFuture} 的操作耗时记到 future 完成为止
+ *
+ * @author heanbian
+ *
+ */
+public class MetricsExecutor implements Executor {
+
+	private final Executor delegate;
+	private final ClientMetrics metrics;
+
+	public MetricsExecutor(Executor delegate, ClientMetrics metrics) {
+		this.delegate = delegate;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public <R, S> S exec(Operator<R, S> operator, R request) {
+		OperatorMetrics m = metrics.operator(operator);
+		long start = System.nanoTime();
+		S response;
+		try {
+			response = delegate.exec(operator, request);
+		} catch (RuntimeException | Error e) {
+			m.recordFailure(System.nanoTime() - start);
+			throw e;
+		}
+		if (response instanceof CompletableFuture) {
+			// the request behind the future goes through the AsyncExecutor, which counts its bulk items
+			((CompletableFuture<?>) response).whenComplete((r, e) -> {
+				if (e != null) {
+					m.recordFailure(System.nanoTime() - start);
+				} else {
+					m.recordSuccess(System.nanoTime() - start);
+				}
+			});
+			return response;
+		}
+		m.recordSuccess(System.nanoTime() - start);
+		if (response instanceof BulkResponse) {
+			metrics.recordBulk((BulkResponse) response);
+		}
+		return response;
+	}
+
+	@Override
+	public void setRetryListener(RetryListener retryListener) {
+		delegate.setRetryListener(retryListener);
+	}
+
+}
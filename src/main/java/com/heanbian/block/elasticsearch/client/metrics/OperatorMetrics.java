@@ -0,0 +1,57 @@
+package com.heanbian.block.elasticsearch.client.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个 Operator 的调用统计，延迟包含重试和退避
+ *
+ * @author heanbian
+ *
+ */
+public class OperatorMetrics {
+
+	private final String name;
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LongAdder successes = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder retries = new LongAdder();
+
+	public OperatorMetrics(String name) {
+		this.name = name;
+	}
+
+	public void recordSuccess(long nanos) {
+		latency.record(nanos);
+		successes.increment();
+	}
+
+	public void recordFailure(long nanos) {
+		latency.record(nanos);
+		failures.increment();
+	}
+
+	public void recordRetry() {
+		retries.increment();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	public long getSuccessCount() {
+		return successes.sum();
+	}
+
+	public long getFailureCount() {
+		return failures.sum();
+	}
+
+	public long getRetryCount() {
+		return retries.sum();
+	}
+
+}
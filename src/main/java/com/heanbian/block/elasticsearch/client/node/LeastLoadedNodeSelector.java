@@ -0,0 +1,424 @@
+package com.heanbian.block.elasticsearch.client.node;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.methods.HttpExecutionAware;
+import org.apache.http.client.methods.HttpRequestWrapper;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.NodeSelector;
+import org.elasticsearch.client.RestClient;
+
+/**
+ * 按负载选择节点：每个节点记录响应延迟的 EWMA 和在途请求数，负载 = 延迟 × (在途数 + 1)。
+ * <p>
+ * RestClient 在 select 之后才轮转节点顺序并依次失败重试，选择器无法指定首个节点。因此普通请求只去掉负载超过最轻节点
+ * slowFactor 倍的节点（至少保留两个），剩下的由 RestClient 轮询，并作为失败重试的候选。
+ * 在 {@link #avoiding} 中发出的请求（对冲）每次随机取两个候选节点选负载较低的一个（power of two choices），只保留这一个节点，
+ * 节点失败时由对冲的另一路请求和执行器的重试兜底。
+ * <p>
+ * 已知角色的专用 master 节点不参与选择。延迟持续超过最快节点 slowFactor 倍达 slowFor 的节点会被排除 ejectFor，全部被排除时不排除。
+ * 需要安装 {@link #instrument(HttpAsyncClientBuilder)} 的统计拦截器。在途数按交换计：请求拦截器登记、响应拦截器结束，
+ * 重试到下一个节点时结束上一次交换，被取消（中止）的交换在下次选择时结束，没有响应的交换超过 inFlightTimeout 后不再计入。
+ * 不再出现在节点列表中（如被嗅探移除）的节点超过 inFlightTimeout 后清除统计。
+ *
+ * @author heanbian
+ *
+ */
+public class LeastLoadedNodeSelector implements NodeSelector {
+
+	private static final String EXCHANGE_ATTRIBUTE = LeastLoadedNodeSelector.class.getName() + ".exchange";
+	private static final double ALPHA = 0.3;
+	private static final double UNKNOWN_LATENCY_NANOS = 1_000_000.0;
+	private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private final ConcurrentHashMap<HttpHost, HostStats> stats = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Object, Exchange> exchanges = new ConcurrentHashMap<>();
+	private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+	private final ThreadLocal<Boolean> pinning = new ThreadLocal<>();
+	private final ThreadLocal<HttpHost> avoid = new ThreadLocal<>();
+	private final ThreadLocal<HttpHost> lastSelected = new ThreadLocal<>();
+
+	private boolean preferCoordinatingOnly;
+	private double slowFactor = 3.0;
+	private long slowForNanos = Duration.ofSeconds(30).toNanos();
+	private long ejectForNanos = Duration.ofSeconds(30).toNanos();
+	private long inFlightTimeoutNanos = Duration.ofMinutes(5).toNanos();
+
+	/**
+	 * 有仅协调节点（非 master、data、ingest）时只在这些节点中选择，节点角色需要通过嗅探获得
+	 */
+	public LeastLoadedNodeSelector setPreferCoordinatingOnly(boolean preferCoordinatingOnly) {
+		this.preferCoordinatingOnly = preferCoordinatingOnly;
+		return this;
+	}
+
+	/**
+	 * @param slowFactor 延迟超过最快节点的倍数视为慢节点
+	 * @param slowFor    慢节点持续多久后排除
+	 * @param ejectFor   排除多久
+	 */
+	public LeastLoadedNodeSelector setEjection(double slowFactor, Duration slowFor, Duration ejectFor) {
+		this.slowFactor = slowFactor;
+		this.slowForNanos = slowFor.toNanos();
+		this.ejectForNanos = ejectFor.toNanos();
+		return this;
+	}
+
+	/**
+	 * 没有响应也没有被取消的交换（如最后一个节点上的超时）超过这个时间后不再计入在途数，应大于 socketTimeout；
+	 * 节点离开节点列表这么久后清除它的统计
+	 */
+	public LeastLoadedNodeSelector setInFlightTimeout(Duration inFlightTimeout) {
+		this.inFlightTimeoutNanos = inFlightTimeout.toNanos();
+		return this;
+	}
+
+	/**
+	 * 安装统计拦截器，在 HttpClientConfigCallback 中调用
+	 */
+	public HttpAsyncClientBuilder instrument(HttpAsyncClientBuilder builder) {
+		return builder.addInterceptorLast(requestInterceptor()).addInterceptorLast(responseInterceptor());
+	}
+
+	/**
+	 * 节点失败时立即结束该节点上已中止或超过 inFlightTimeout 的交换，不安装时这些交换在之后的选择中结束
+	 */
+	public RestClient.FailureListener failureListener() {
+		return new RestClient.FailureListener() {
+			@Override
+			public void onFailure(Node node) {
+				finishStale(node.getHost(), System.nanoTime());
+			}
+		};
+	}
+
+	@Override
+	public void select(Iterable<Node> nodes) {
+		long now = System.nanoTime();
+		List<Node> candidates = candidates(nodes, now);
+		sweep(now);
+		if (candidates.isEmpty()) {
+			return;
+		}
+		HttpHost excluded = avoid.get();
+		if (excluded != null && candidates.size() > 1) {
+			candidates.removeIf(node -> node.getHost().equals(excluded));
+		}
+		if (pinning.get() == null) {
+			retain(nodes, lightest(candidates));
+			return;
+		}
+		Node chosen = candidates.get(0);
+		if (candidates.size() > 1) {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			int a = random.nextInt(candidates.size());
+			int b = random.nextInt(candidates.size() - 1);
+			if (b >= a) {
+				b++;
+			}
+			Node na = candidates.get(a);
+			Node nb = candidates.get(b);
+			chosen = stats(na.getHost()).load() <= stats(nb.getHost()).load() ? na : nb;
+		}
+		retain(nodes, Collections.singletonList(chosen));
+		lastSelected.set(chosen.getHost());
+	}
+
+	/**
+	 * 去掉负载超过最轻节点 slowFactor 倍的节点，至少保留两个
+	 */
+	private List<Node> lightest(List<Node> candidates) {
+		if (candidates.size() <= 2) {
+			return candidates;
+		}
+		List<Node> sorted = new ArrayList<>(candidates);
+		sorted.sort(Comparator.comparingDouble(node -> stats(node.getHost()).load()));
+		double limit = stats(sorted.get(0).getHost()).load() * slowFactor;
+		int keep = 2;
+		while (keep < sorted.size() && stats(sorted.get(keep).getHost()).load() <= limit) {
+			keep++;
+		}
+		return sorted.subList(0, keep);
+	}
+
+	private static void retain(Iterable<Node> nodes, List<Node> kept) {
+		for (Iterator<Node> it = nodes.iterator(); it.hasNext();) {
+			Node node = it.next();
+			if (!containsIdentity(kept, node)) {
+				it.remove();
+			}
+		}
+	}
+
+	private static boolean containsIdentity(List<Node> nodes, Node node) {
+		for (Node n : nodes) {
+			if (n == node) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 在当前线程执行 action，期间发出的请求只发往选出的一个节点并尽量不选择 host，用于对冲请求避开首次请求的节点。
+	 * RestClient 在发起请求的线程中选择节点，失败后的重试不受影响
+	 *
+	 * @param host 要避开的节点，null表示不避开
+	 */
+	public <T> T avoiding(HttpHost host, Supplier<T> action) {
+		lastSelected.remove();
+		pinning.set(Boolean.TRUE);
+		if (host != null) {
+			avoid.set(host);
+		}
+		try {
+			return action.get();
+		} finally {
+			avoid.remove();
+			pinning.remove();
+		}
+	}
+
+	/**
+	 * 当前线程最近一次在 {@link #avoiding} 中选择的节点
+	 */
+	public HttpHost lastSelected() {
+		return lastSelected.get();
+	}
+
+	/**
+	 * 发往 host 的请求被取消后调用，立即结束该节点上已中止的交换，而不是等到下次选择。每个交换只结束一次，重复调用没有影响
+	 */
+	public void release(HttpHost host) {
+		finishStale(host, System.nanoTime());
+	}
+
+	/**
+	 * 结束所有节点上已中止或超时的交换，清除超过 inFlightTimeout 没有出现在节点列表中的节点统计，最多每 100ms 执行一次
+	 */
+	private void sweep(long now) {
+		long last = lastSweep.get();
+		if (now - last < SWEEP_INTERVAL_NANOS || !lastSweep.compareAndSet(last, now)) {
+			return;
+		}
+		finishStale(null, now);
+		// 超时的交换都已结束，在途数为0的统计不会再被引用
+		stats.entrySet().removeIf(e -> now - e.getValue().lastSeen > inFlightTimeoutNanos
+				&& e.getValue().inFlight.get() == 0);
+	}
+
+	/**
+	 * 结束已中止（取消）或超过 inFlightTimeout 的交换
+	 *
+	 * @param host 只处理这个节点上的交换，null表示所有节点
+	 */
+	private void finishStale(HttpHost host, long now) {
+		for (Exchange e : exchanges.values()) {
+			if ((host == null || host.equals(e.target))
+					&& (e.request.isAborted() || now - e.start > inFlightTimeoutNanos)) {
+				e.finish();
+			}
+		}
+	}
+
+	private List<Node> candidates(Iterable<Node> nodes, long now) {
+		List<Node> all = new ArrayList<>();
+		double fastest = Double.MAX_VALUE;
+		for (Node node : nodes) {
+			if (isDedicatedMaster(node)) {
+				continue;
+			}
+			all.add(node);
+			HostStats s = stats(node.getHost());
+			s.lastSeen = now;
+			if (!s.isEjected(now) && s.latency() > 0) {
+				fastest = Math.min(fastest, s.latency());
+			}
+		}
+		List<Node> available = new ArrayList<>(all.size());
+		List<Node> coordinating = new ArrayList<>();
+		for (Node node : all) {
+			HostStats s = stats(node.getHost());
+			if (fastest != Double.MAX_VALUE) {
+				s.checkSlow(now, s.latency() > fastest * slowFactor);
+			}
+			if (s.isEjected(now)) {
+				continue;
+			}
+			available.add(node);
+			if (isCoordinatingOnly(node)) {
+				coordinating.add(node);
+			}
+		}
+		if (all.isEmpty()) {// 只有专用 master 节点
+			return all;
+		}
+		if (available.isEmpty()) {
+			available = all;
+		}
+		return preferCoordinatingOnly && !coordinating.isEmpty() ? coordinating : available;
+	}
+
+	private static boolean isDedicatedMaster(Node node) {
+		Node.Roles roles = node.getRoles();
+		return roles != null && roles.isMasterEligible() && !roles.canContainData() && !roles.isIngest();
+	}
+
+	private static boolean isCoordinatingOnly(Node node) {
+		Node.Roles roles = node.getRoles();
+		return roles != null && !roles.isMasterEligible() && !roles.canContainData() && !roles.isIngest();
+	}
+
+	private HttpRequestInterceptor requestInterceptor() {
+		return (request, context) -> {
+			HttpHost host = targetHost(context);
+			Object original = request instanceof HttpRequestWrapper ? ((HttpRequestWrapper) request).getOriginal()
+					: request;
+			if (host == null || !(original instanceof HttpExecutionAware)) {
+				return;
+			}
+			Exchange exchange = new Exchange(host, stats(host), (HttpExecutionAware) original);
+			context.setAttribute(EXCHANGE_ATTRIBUTE, exchange);
+			Exchange previous = exchanges.put(original, exchange);
+			if (previous != null) {// RestClient 重试时复用同一个请求对象，上一次交换已经失败
+				previous.finish();
+			}
+		};
+	}
+
+	private HttpResponseInterceptor responseInterceptor() {
+		return (response, context) -> {
+			Object exchange = context.getAttribute(EXCHANGE_ATTRIBUTE);
+			if (exchange instanceof Exchange && ((Exchange) exchange).finish()) {
+				Exchange e = (Exchange) exchange;
+				e.host.record(System.nanoTime() - e.start);
+			}
+		};
+	}
+
+	private static HttpHost targetHost(HttpContext context) {
+		Object host = context.getAttribute(HttpCoreContext.HTTP_TARGET_HOST);
+		return host instanceof HttpHost ? (HttpHost) host : null;
+	}
+
+	private HostStats stats(HttpHost host) {
+		HostStats s = stats.get(host);
+		return s != null ? s : stats.computeIfAbsent(host, h -> new HostStats());
+	}
+
+	/**
+	 * 节点当前的延迟 EWMA（纳秒），没有样本时为0
+	 */
+	public double getLatencyNanos(HttpHost host) {
+		HostStats s = stats.get(host);
+		return s == null ? 0.0 : s.latency();
+	}
+
+	public int getInFlight(HttpHost host) {
+		HostStats s = stats.get(host);
+		return s == null ? 0 : s.inFlight.get();
+	}
+
+	int trackedHostCount() {
+		return stats.size();
+	}
+
+	/**
+	 * 一次发往某个节点的交换，只结束一次
+	 */
+	private final class Exchange {
+
+		final HttpHost target;
+		final HostStats host;
+		final HttpExecutionAware request;
+		final long start = System.nanoTime();
+		final AtomicBoolean finished = new AtomicBoolean();
+
+		Exchange(HttpHost target, HostStats host, HttpExecutionAware request) {
+			this.target = target;
+			this.host = host;
+			this.request = request;
+			host.inFlight.incrementAndGet();
+		}
+
+		boolean finish() {
+			if (!finished.compareAndSet(false, true)) {
+				return false;
+			}
+			host.inFlight.decrementAndGet();
+			exchanges.remove(request, this);
+			return true;
+		}
+	}
+
+	private final class HostStats {
+
+		final AtomicInteger inFlight = new AtomicInteger();
+		final AtomicLong ewmaBits = new AtomicLong(Double.doubleToLongBits(0.0));
+		volatile long slowSince;
+		volatile long ejectedUntil;
+		volatile long lastSeen = System.nanoTime();
+
+		void record(long nanos) {
+			ewmaBits.updateAndGet(bits -> {
+				double old = Double.longBitsToDouble(bits);
+				return Double.doubleToLongBits(old == 0.0 ? nanos : old + ALPHA * (nanos - old));
+			});
+		}
+
+		double latency() {
+			return Double.longBitsToDouble(ewmaBits.get());
+		}
+
+		double load() {
+			double latency = latency();
+			return (latency == 0.0 ? UNKNOWN_LATENCY_NANOS : latency) * (inFlight.get() + 1);
+		}
+
+		boolean isEjected(long now) {
+			long until = ejectedUntil;
+			if (until == 0L) {
+				return false;
+			}
+			if (now - until < 0) {
+				return true;
+			}
+			ejectedUntil = 0L;
+			ewmaBits.set(Double.doubleToLongBits(0.0));// 恢复后重新探测
+			return false;
+		}
+
+		void checkSlow(long now, boolean slow) {
+			if (!slow) {
+				slowSince = 0L;
+				return;
+			}
+			long since = slowSince;
+			if (since == 0L) {
+				slowSince = now;
+			} else if (now - since >= slowForNanos) {
+				slowSince = 0L;
+				ejectedUntil = now + ejectForNanos;
+			}
+		}
+	}
+
+}
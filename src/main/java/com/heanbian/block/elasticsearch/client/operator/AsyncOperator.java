@@ -0,0 +1,11 @@
+package com.heanbian.block.elasticsearch.client.operator;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.client.Cancellable;
+
+@FunctionalInterface
+public interface AsyncOperator<R, S> {
+
+	Cancellable operator(R request, ActionListener<S> listener);
+
+}
@@ -0,0 +1,18 @@
+package com.heanbian.block.elasticsearch.client.operator;
+
+/**
+ * 幂等的只读 Operator，同一个请求可以重复发送，对冲请求只作用于实现了它的 Operator，写操作不能实现它
+ *
+ * @author heanbian
+ *
+ */
+public interface ReadOperator<R> {
+
+	/**
+	 * 该请求能否重复发送，如带 scroll 的查询每次都会创建新的上下文，不能重复
+	 */
+	default boolean isIdempotent(R request) {
+		return true;
+	}
+
+}
@@ -24,6 +24,11 @@ public class Page<I> {
 	 */
 	private List<I> list;
 
+	/**
+	 * 下一页游标，没有下一页时为null
+	 */
+	private String cursor;
+
 	public int getPageNumber() {
 		return pageNumber;
 	}
@@ -65,4 +70,13 @@ public class Page<I> {
 		return this;
 	}
 
+	public String getCursor() {
+		return cursor;
+	}
+
+	public Page<I> setCursor(String cursor) {
+		this.cursor = cursor;
+		return this;
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,147 @@
+package com.heanbian.block.elasticsearch.client.page;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.SortBuilder;
+
+import com.heanbian.block.elasticsearch.client.cache.LruCache;
+
+/**
+ * 缓存深分页中见过的页边界排序值：第 n 页最后一条的排序值即第 n+1 页的 search_after。
+ * 跳页时从最近的已知边界开始，而不是从第一页开始。
+ * <p>
+ * 边界排序值会跨 point in time 复用，而 point in time 隐式追加的 {@code _shard_doc} 排序值只在同一个
+ * point in time 内有意义，因此只有排序以唯一字段（默认 {@code _id}）结尾时才缓存，见 {@link #supports(List)}；
+ * 缓存时把 {@code _shard_doc} 值替换为最大值，排序值相同即为同一文档，不会重复或遗漏。
+ * 索引在 ttl 内有写入时，缓存的边界对应写入前的结果，页的内容会随之整体偏移。
+ *
+ * @author heanbian
+ *
+ */
+public class PageBoundaryCache {
+
+	private static final int MAX_BOUNDARIES_PER_QUERY = 1024;
+
+	private final LruCache<String, ConcurrentNavigableMap<Integer, Object[]>> cache;
+	private final Set<String> tiebreakerFields;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	public PageBoundaryCache() {
+		this(1000, Duration.ofMinutes(5));
+	}
+
+	/**
+	 * @param maxQueries 最多缓存的查询数
+	 * @param ttl        过期时间
+	 */
+	public PageBoundaryCache(long maxQueries, Duration ttl) {
+		this(maxQueries, ttl, "_id");
+	}
+
+	/**
+	 * @param maxQueries       最多缓存的查询数
+	 * @param ttl              过期时间
+	 * @param tiebreakerFields 值唯一的字段，排序的最后一项是其中之一时才缓存边界
+	 */
+	public PageBoundaryCache(long maxQueries, Duration ttl, String... tiebreakerFields) {
+		this.cache = new LruCache<>(maxQueries, ttl);
+		this.tiebreakerFields = new HashSet<>(Arrays.asList(tiebreakerFields));
+	}
+
+	/**
+	 * @return 排序的最后一项是否为唯一字段，只有这样边界才能跨 point in time 复用
+	 */
+	public boolean supports(List<SortBuilder<?>> sorts) {
+		if (sorts == null || sorts.isEmpty()) {
+			return false;
+		}
+		SortBuilder<?> last = sorts.get(sorts.size() - 1);
+		return last instanceof FieldSortBuilder && tiebreakerFields.contains(((FieldSortBuilder) last).getFieldName());
+	}
+
+	/**
+	 * @param normalizedSource 去掉 from/size/search_after/pit 后的查询 JSON
+	 */
+	public static String key(String normalizedSource, String[] indices, int pageSize) {
+		String[] sorted = indices.clone();
+		Arrays.sort(sorted);
+		String raw = normalizedSource + '\n' + String.join(",", sorted) + '\n' + pageSize;
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(raw.getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return 页码不大于 page 的最近边界，没有时返回 null
+	 */
+	public Map.Entry<Integer, Object[]> floor(String key, int page) {
+		ConcurrentNavigableMap<Integer, Object[]> boundaries = cache.get(key);
+		Map.Entry<Integer, Object[]> e = boundaries == null ? null : boundaries.floorEntry(page);
+		if (e == null) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+		return e;
+	}
+
+	/**
+	 * @param sortValues 边界文档的排序值
+	 * @param sortCount  查询中显式排序的个数，多出的是 point in time 追加的 _shard_doc
+	 */
+	public void put(String key, int page, Object[] sortValues, int sortCount) {
+		if (page <= 0 || sortValues == null) {
+			return;
+		}
+		Object[] values = sortValues;
+		if (sortValues.length > sortCount) {
+			values = sortValues.clone();
+			for (int i = sortCount; i < values.length; i++) {
+				values[i] = Long.MAX_VALUE;
+			}
+		}
+		ConcurrentNavigableMap<Integer, Object[]> boundaries = cache.computeIfAbsent(key,
+				k -> new ConcurrentSkipListMap<>());
+		boundaries.put(page, values);
+		if (boundaries.size() > MAX_BOUNDARIES_PER_QUERY) {
+			boundaries.pollFirstEntry();
+		}
+	}
+
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public int size() {
+		return cache.size();
+	}
+
+}
@@ -0,0 +1,77 @@
+package com.heanbian.block.elasticsearch.client.page;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * search_after 分页游标，编码了 point in time id、下一页页码和上一页最后一条的排序值
+ *
+ * @author heanbian
+ *
+ */
+public class PageCursor {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private String pit;
+	private int page;
+	private Object[] after;
+
+	public PageCursor() {
+	}
+
+	public PageCursor(String pit, int page, Object[] after) {
+		this.pit = pit;
+		this.page = page;
+		this.after = after;
+	}
+
+	public static PageCursor decode(String cursor) {
+		try {
+			return MAPPER.readValue(Base64.getUrlDecoder().decode(cursor), PageCursor.class);
+		} catch (IOException | IllegalArgumentException e) {
+			throw new IllegalArgumentException("invalid page cursor: " + cursor, e);
+		}
+	}
+
+	public String encode() {
+		try {
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(MAPPER.writeValueAsBytes(this));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public String getPit() {
+		return pit;
+	}
+
+	public void setPit(String pit) {
+		this.pit = pit;
+	}
+
+	public int getPage() {
+		return page;
+	}
+
+	public void setPage(int page) {
+		this.page = page;
+	}
+
+	public Object[] getAfter() {
+		return after;
+	}
+
+	public void setAfter(Object[] after) {
+		this.after = after;
+	}
+
+	@Override
+	public String toString() {
+		return new String(Base64.getUrlDecoder().decode(encode()), StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,32 @@
+package com.heanbian.block.elasticsearch.client.scroll;
+
+public class ExportResult {
+
+	private final long[] sliceCounts;
+	private final long tookMillis;
+
+	public ExportResult(long[] sliceCounts, long tookMillis) {
+		this.sliceCounts = sliceCounts;
+		this.tookMillis = tookMillis;
+	}
+
+	/**
+	 * 每个分片处理的文档数
+	 */
+	public long[] getSliceCounts() {
+		return sliceCounts.clone();
+	}
+
+	public long getTotal() {
+		long total = 0;
+		for (long c : sliceCounts) {
+			total += c;
+		}
+		return total;
+	}
+
+	public long getTookMillis() {
+		return tookMillis;
+	}
+
+}
@@ -0,0 +1,119 @@
+package com.heanbian.block.elasticsearch.client.scroll;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.SearchHit;
+
+/**
+ * 惰性遍历 scroll 结果，处理第 N 批时后台预取第 N+1 批；遍历结束或 close 时自动清除 scroll。
+ * 非线程安全，一个迭代器只能由一个线程消费。
+ *
+ * @author heanbian
+ *
+ */
+public class ScrollIterator<T> implements Iterator<T>, AutoCloseable {
+
+	private final Function<String, CompletableFuture<SearchResponse>> fetcher;
+	private final Consumer<String> clearer;
+	private final Function<SearchHit, T> hitMapper;
+
+	private SearchHit[] hits;
+	private int pos;
+	private String scrollId;
+	private CompletableFuture<SearchResponse> next;
+	private boolean closed;
+
+	/**
+	 * @param first     带 scroll 的首次查询结果
+	 * @param fetcher   根据 scrollId 异步获取下一批
+	 * @param clearer   清除 scroll
+	 * @param hitMapper 将命中转换为结果类型
+	 */
+	public ScrollIterator(SearchResponse first, Function<String, CompletableFuture<SearchResponse>> fetcher,
+			Consumer<String> clearer, Function<SearchHit, T> hitMapper) {
+		this.fetcher = fetcher;
+		this.clearer = clearer;
+		this.hitMapper = hitMapper;
+		accept(first);
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (pos >= hits.length) {
+			if (next == null) {
+				close();
+				return false;
+			}
+			accept(await(next));
+		}
+		return true;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return hitMapper.apply(hits[pos++]);
+	}
+
+	public Stream<T> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false)
+				.onClose(this::close);
+	}
+
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		hits = new SearchHit[0];
+		if (next != null) {
+			next.cancel(true);
+			next = null;
+		}
+		if (scrollId != null) {
+			try {
+				clearer.accept(scrollId);
+			} catch (RuntimeException e) {// expires with keepAlive anyway
+			}
+			scrollId = null;
+		}
+	}
+
+	private void accept(SearchResponse response) {
+		SearchHit[] batch = response.getHits().getHits();
+		hits = batch == null ? new SearchHit[0] : batch;
+		pos = 0;
+		if (response.getScrollId() != null) {
+			scrollId = response.getScrollId();
+		}
+		// prefetch the next batch while this one is being consumed
+		next = (hits.length > 0 && scrollId != null && !closed) ? fetcher.apply(scrollId) : null;
+	}
+
+	private SearchResponse await(CompletableFuture<SearchResponse> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			close();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			close();
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+}
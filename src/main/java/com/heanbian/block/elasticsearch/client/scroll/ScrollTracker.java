@@ -0,0 +1,116 @@
+package com.heanbian.block.elasticsearch.client.scroll;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 统计通过模板打开和清除的 scroll，{@link #getOpen()} 持续增长说明有 scroll 没有被清除。
+ * 按 keepAlive 记录每个 scroll 的到期时间，服务端已经过期的 scroll 会被移除并计入 {@link #getExpired()}。
+ *
+ * @author heanbian
+ *
+ */
+public class ScrollTracker {
+
+	private static final long PRUNE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final LongAdder opened = new LongAdder();
+	private final LongAdder cleared = new LongAdder();
+	private final LongAdder expired = new LongAdder();
+	private final ConcurrentMap<String, Long> open = new ConcurrentHashMap<>();
+	private final AtomicLong nextPrune = new AtomicLong(System.nanoTime());
+
+	public void onOpen(String scrollId, Duration keepAlive) {
+		if (scrollId == null) {
+			return;
+		}
+		if (open.put(scrollId, expiresAt(System.nanoTime(), keepAlive)) == null) {
+			opened.increment();
+		}
+		pruneIfDue();
+	}
+
+	/**
+	 * scroll 续期后服务端可能返回新的 scrollId；keepAlive 为 null 时服务端不续期，保留原到期时间
+	 */
+	public void onScroll(String previous, String current, Duration keepAlive) {
+		Long expiresAt = open.get(previous);
+		if (expiresAt != null) {
+			long next = keepAlive != null ? expiresAt(System.nanoTime(), keepAlive) : expiresAt;
+			if (current != null && !current.equals(previous)) {
+				if (open.remove(previous) != null) {
+					open.put(current, next);
+				}
+			} else {
+				open.replace(previous, next);
+			}
+		}
+		pruneIfDue();
+	}
+
+	public void onClear(Collection<String> scrollIds) {
+		for (String id : scrollIds) {
+			if (open.remove(id) != null) {
+				cleared.increment();
+			}
+		}
+	}
+
+	public long getOpened() {
+		return opened.sum();
+	}
+
+	public long getCleared() {
+		return cleared.sum();
+	}
+
+	/**
+	 * 未清除、已在服务端过期的 scroll 数
+	 */
+	public long getExpired() {
+		prune(System.nanoTime());
+		return expired.sum();
+	}
+
+	/**
+	 * 已打开、尚未清除且未过期的 scroll 数
+	 */
+	public int getOpen() {
+		prune(System.nanoTime());
+		return open.size();
+	}
+
+	public Set<String> getOpenScrollIds() {
+		prune(System.nanoTime());
+		return Collections.unmodifiableSet(open.keySet());
+	}
+
+	private void pruneIfDue() {
+		long now = System.nanoTime();
+		long due = nextPrune.get();
+		if (now - due >= 0 && nextPrune.compareAndSet(due, now + PRUNE_INTERVAL_NANOS)) {
+			prune(now);
+		}
+	}
+
+	private void prune(long now) {
+		for (Map.Entry<String, Long> e : open.entrySet()) {
+			if (now - e.getValue() >= 0 && open.remove(e.getKey(), e.getValue())) {
+				expired.increment();
+			}
+		}
+	}
+
+	private static long expiresAt(long now, Duration keepAlive) {
+		return now + keepAlive.toNanos();
+	}
+
+}
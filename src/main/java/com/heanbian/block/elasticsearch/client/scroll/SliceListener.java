@@ -0,0 +1,28 @@
+package com.heanbian.block.elasticsearch.client.scroll;
+
+/**
+ * 分片导出进度回调，会在各分片的工作线程中并发调用
+ *
+ * @author heanbian
+ *
+ */
+public interface SliceListener {
+
+	default void onSliceStart(int slice) {
+	}
+
+	/**
+	 * 每处理完一批后调用
+	 *
+	 * @param exported 该分片已处理的文档数
+	 */
+	default void onProgress(int slice, long exported) {
+	}
+
+	default void onSliceComplete(int slice, long exported) {
+	}
+
+	default void onSliceFailure(int slice, Exception e) {
+	}
+
+}
@@ -0,0 +1,150 @@
+package com.heanbian.block.elasticsearch.client.scroll;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 将一个查询拆成 N 个 sliced scroll 并行导出，每个分片由独立的工作线程遍历并自动清除 scroll。
+ *
+ * @author heanbian
+ *
+ */
+public class SlicedScrollExporter<T> {
+
+	private final IntFunction<ScrollIterator<T>> sliceOpener;
+	private final int slices;
+	private final int batchSize;
+
+	/**
+	 * @param sliceOpener 打开第 i 个分片的 scroll
+	 * @param slices      分片数
+	 * @param batchSize   每批大小，用于进度回调
+	 */
+	public SlicedScrollExporter(IntFunction<ScrollIterator<T>> sliceOpener, int slices, int batchSize) {
+		if (slices < 1) {
+			throw new IllegalArgumentException("slices must be positive");
+		}
+		this.sliceOpener = sliceOpener;
+		this.slices = slices;
+		this.batchSize = Math.max(batchSize, 1);
+	}
+
+	/**
+	 * 在 executor 上并行导出，consumer 会被多个线程并发调用，阻塞直到全部分片完成。任一分片失败时取消其余分片并抛出异常。
+	 */
+	public ExportResult export(Consumer<? super T> consumer, SliceListener listener, Executor executor) {
+		final long start = System.nanoTime();
+		final long[] counts = new long[slices];
+		final AtomicBoolean cancelled = new AtomicBoolean();
+		final List<CompletableFuture<Void>> futures = new ArrayList<>(slices);
+
+		for (int i = 0; i < slices; i++) {
+			final int slice = i;
+			futures.add(CompletableFuture.runAsync(() -> {
+				listener.onSliceStart(slice);
+				long n = 0;
+				try (ScrollIterator<T> it = sliceOpener.apply(slice)) {
+					while (!cancelled.get() && it.hasNext()) {
+						consumer.accept(it.next());
+						if (++n % batchSize == 0) {
+							listener.onProgress(slice, n);
+						}
+					}
+				} catch (RuntimeException e) {
+					cancelled.set(true);
+					listener.onSliceFailure(slice, e);
+					throw e;
+				} finally {
+					counts[slice] = n;
+				}
+				listener.onSliceComplete(slice, n);
+			}, executor));
+		}
+
+		try {
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+		} catch (CompletionException e) {
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+					: new RuntimeException(e.getCause());
+		}
+		return new ExportResult(counts, (System.nanoTime() - start) / 1_000_000L);
+	}
+
+	/**
+	 * 合并所有分片的并行 Stream，每个分片是一个不可再拆分的单元；使用完毕须关闭 Stream。
+	 */
+	public Stream<T> stream() {
+		final ConcurrentLinkedQueue<ScrollIterator<T>> opened = new ConcurrentLinkedQueue<>();
+		return StreamSupport.stream(new SliceSpliterator(0, slices, opened), true).onClose(() -> {
+			ScrollIterator<T> it;
+			while ((it = opened.poll()) != null) {
+				it.close();
+			}
+		});
+	}
+
+	private final class SliceSpliterator implements Spliterator<T> {
+
+		private final ConcurrentLinkedQueue<ScrollIterator<T>> opened;
+		private int next;
+		private final int end;
+		private ScrollIterator<T> current;
+
+		SliceSpliterator(int from, int end, ConcurrentLinkedQueue<ScrollIterator<T>> opened) {
+			this.next = from;
+			this.end = end;
+			this.opened = opened;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super T> action) {
+			for (;;) {
+				if (current == null) {
+					if (next >= end) {
+						return false;
+					}
+					current = sliceOpener.apply(next++);
+					opened.add(current);
+				}
+				if (current.hasNext()) {
+					action.accept(current.next());
+					return true;
+				}
+				opened.remove(current);
+				current = null;
+			}
+		}
+
+		@Override
+		public Spliterator<T> trySplit() {
+			if (current != null || end - next < 2) {
+				return null;
+			}
+			int mid = (next + end) >>> 1;
+			SliceSpliterator prefix = new SliceSpliterator(next, mid, opened);
+			next = mid;
+			return prefix;
+		}
+
+		@Override
+		public long estimateSize() {
+			return current == null && next >= end ? 0 : Long.MAX_VALUE;
+		}
+
+		@Override
+		public int characteristics() {
+			return NONNULL;
+		}
+	}
+
+}
@@ -0,0 +1,55 @@
+package com.heanbian.block.elasticsearch.client.search;
+
+import java.util.List;
+
+/**
+ * multiSearch 的结果，与查询一一对应、顺序相同
+ *
+ * @author heanbian
+ *
+ */
+public class MultiSearchResult {
+
+	private final List<SearchQuery<?>> queries;
+	private final List<SearchResult<?>> results;
+
+	public MultiSearchResult(List<SearchQuery<?>> queries, List<SearchResult<?>> results) {
+		this.queries = queries;
+		this.results = results;
+	}
+
+	/**
+	 * 按查询对象取结果
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> SearchResult<T> get(SearchQuery<T> query) {
+		for (int i = 0; i < queries.size(); i++) {
+			if (queries.get(i) == query) {
+				return (SearchResult<T>) results.get(i);
+			}
+		}
+		throw new IllegalArgumentException("query is not part of this multi search");
+	}
+
+	public SearchResult<?> get(int i) {
+		return results.get(i);
+	}
+
+	public List<SearchResult<?>> getResults() {
+		return results;
+	}
+
+	public int size() {
+		return results.size();
+	}
+
+	public boolean hasFailures() {
+		for (SearchResult<?> r : results) {
+			if (r.isFailed()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
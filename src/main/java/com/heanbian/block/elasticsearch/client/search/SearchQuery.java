@@ -0,0 +1,39 @@
+package com.heanbian.block.elasticsearch.client.search;
+
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+/**
+ * multiSearch 中的一个查询
+ *
+ * @author heanbian
+ *
+ */
+public class SearchQuery<T> {
+
+	private final SearchSourceBuilder source;
+	private final String[] indices;
+	private final Class<T> clazz;
+
+	public SearchQuery(SearchSourceBuilder source, String[] indices, Class<T> clazz) {
+		this.source = source;
+		this.indices = indices;
+		this.clazz = clazz;
+	}
+
+	public static <T> SearchQuery<T> of(SearchSourceBuilder source, Class<T> clazz, String... indices) {
+		return new SearchQuery<>(source, indices, clazz);
+	}
+
+	public SearchSourceBuilder getSource() {
+		return source;
+	}
+
+	public String[] getIndices() {
+		return indices;
+	}
+
+	public Class<T> getClazz() {
+		return clazz;
+	}
+
+}
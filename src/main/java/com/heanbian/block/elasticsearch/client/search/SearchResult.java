@@ -0,0 +1,50 @@
+package com.heanbian.block.elasticsearch.client.search;
+
+import java.util.List;
+
+/**
+ * multiSearch 中单个查询的结果，失败时 list 为null
+ *
+ * @author heanbian
+ *
+ */
+public class SearchResult<T> {
+
+	private final List<T> list;
+	private final long total;
+	private final Exception failure;
+
+	private SearchResult(List<T> list, long total, Exception failure) {
+		this.list = list;
+		this.total = total;
+		this.failure = failure;
+	}
+
+	public static <T> SearchResult<T> of(List<T> list, long total) {
+		return new SearchResult<>(list, total, null);
+	}
+
+	public static <T> SearchResult<T> failed(Exception failure) {
+		return new SearchResult<>(null, 0L, failure);
+	}
+
+	public List<T> getList() {
+		return list;
+	}
+
+	/**
+	 * 命中总数，未统计时为-1
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	public Exception getFailure() {
+		return failure;
+	}
+
+	public boolean isFailed() {
+		return failure != null;
+	}
+
+}
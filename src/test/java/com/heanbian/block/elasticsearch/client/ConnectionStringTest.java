@@ -0,0 +1,92 @@
+package com.heanbian.block.elasticsearch.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @author heanbian
+ *
+ */
+class ConnectionStringTest {
+
+	private HttpServer server;
+	private volatile boolean withoutMaster;
+
+	@AfterEach
+	void stopServer() {
+		if (server != null) {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	void sniffRefreshesNodeList() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/_nodes/http", this::nodes);
+		server.start();
+		String address = "127.0.0.1:" + server.getAddress().getPort();
+
+		ConnectionString conn = new ConnectionString("elasticsearch://" + address + "?sniff=1s&nodeSelector=leastLoaded");
+		RestHighLevelClient client = conn.getRestHighLevelClient();
+		try {
+			// 首次嗅探在创建客户端时立即执行，之后按间隔刷新
+			assertEquals(new TreeSet<>(List.of("coordinating", "data", "master")), awaitNodes(client, 3));
+			withoutMaster = true;
+			assertEquals(new TreeSet<>(List.of("coordinating", "data")), awaitNodes(client, 2));
+		} finally {
+			client.close();
+		}
+	}
+
+	private static Set<String> awaitNodes(RestHighLevelClient client, int expected) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (client.getLowLevelClient().getNodes().size() != expected && System.nanoTime() < deadline) {
+			Thread.sleep(20);
+		}
+		Set<String> names = new TreeSet<>();
+		for (Node node : client.getLowLevelClient().getNodes()) {
+			assertNotNull(node.getRoles());
+			names.add(node.getName());
+		}
+		return names;
+	}
+
+	private void nodes(HttpExchange exchange) throws IOException {
+		int port = server.getAddress().getPort();
+		String body = "{\"_nodes\":{\"total\":3,\"successful\":3,\"failed\":0},\"cluster_name\":\"stub\",\"nodes\":{"
+				+ node("data", port, "\"data\",\"ingest\"") + ","
+				+ (withoutMaster ? "" : node("master", port + 1, "\"master\"") + ",")
+				+ node("coordinating", port + 2, "") + "}}";
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+		exchange.sendResponseHeaders(200, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private static String node(String name, int port, String roles) {
+		String address = "127.0.0.1:" + port;
+		return "\"" + name + "\":{\"name\":\"" + name + "\",\"host\":\"127.0.0.1\",\"ip\":\"127.0.0.1\","
+				+ "\"version\":\"7.13.3\",\"roles\":[" + roles + "],\"attributes\":{},"
+				+ "\"http\":{\"bound_address\":[\"" + address + "\"],\"publish_address\":\"" + address + "\"}}";
+	}
+
+}
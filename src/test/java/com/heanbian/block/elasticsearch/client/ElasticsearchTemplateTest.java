@@ -0,0 +1,317 @@
+package com.heanbian.block.elasticsearch.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.IntStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpHost;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.core.CountResponse;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.heanbian.block.elasticsearch.client.cache.QueryCache;
+import com.heanbian.block.elasticsearch.client.executor.CircuitBreakerExecutor;
+import com.heanbian.block.elasticsearch.client.executor.DefaultAsyncExecutorImpl;
+import com.heanbian.block.elasticsearch.client.executor.DefaultExecutorImpl;
+import com.heanbian.block.elasticsearch.client.executor.Executor;
+import com.heanbian.block.elasticsearch.client.executor.ExponentialBackoff;
+import com.heanbian.block.elasticsearch.client.executor.HedgingOptions;
+import com.heanbian.block.elasticsearch.client.executor.RetryBudget;
+import com.heanbian.block.elasticsearch.client.operator.Operator;
+import com.heanbian.block.elasticsearch.client.page.Page;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @author heanbian
+ *
+ */
+class ElasticsearchTemplateTest {
+
+	@Test
+	void asyncPathsRejectSyncOnlyCustomExecutor() throws IOException {
+		try (RestHighLevelClient client = new RestHighLevelClient(RestClient.builder(new HttpHost("127.0.0.1", 9200)))) {
+			ElasticsearchTemplate template = new ElasticsearchTemplate(client, new ObjectMapper(),
+					new CircuitBreakerExecutor(new DefaultExecutorImpl(1)));
+			assertThrows(IllegalStateException.class, () -> template.setAsyncBridging(true));
+			assertThrows(IllegalStateException.class, () -> template.setHedging(new HedgingOptions()));
+		}
+	}
+
+	@Test
+	void asyncPathsAcceptMatchingAsyncExecutor() throws IOException {
+		try (RestHighLevelClient client = new RestHighLevelClient(RestClient.builder(new HttpHost("127.0.0.1", 9200)))) {
+			CircuitBreakerExecutor breaker = new CircuitBreakerExecutor(new DefaultExecutorImpl(1));
+			ElasticsearchTemplate template = new ElasticsearchTemplate(client, new ObjectMapper(), breaker,
+					breaker.async(new DefaultAsyncExecutorImpl(1, ExponentialBackoff.defaultBackoff(),
+							RetryBudget.unlimited(), Duration.ofSeconds(30), DefaultAsyncExecutorImpl.sharedScheduler())));
+			template.setAsyncBridging(true);
+			template.setHedging(new HedgingOptions());
+			assertTrue(template.isAsyncBridging());
+		}
+	}
+
+	@Test
+	void legacyDeepPagingClosesPointInTime() throws IOException {
+		AtomicInteger opened = new AtomicInteger();
+		AtomicInteger closed = new AtomicInteger();
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			String path = exchange.getRequestURI().getPath();
+			if (path.endsWith("/_pit") && "DELETE".equals(exchange.getRequestMethod())) {
+				closed.incrementAndGet();
+				respond(exchange, "{\"succeeded\":true,\"num_freed\":1}");
+			} else if (path.endsWith("/_pit")) {
+				respond(exchange, "{\"id\":\"pit-" + opened.incrementAndGet() + "\"}");
+			} else {
+				respond(exchange, "{\"took\":1,\"timed_out\":false,\"pit_id\":\"pit-next\","
+						+ "\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0},"
+						+ "\"hits\":{\"total\":{\"value\":10,\"relation\":\"eq\"},\"max_score\":null,\"hits\":["
+						+ "{\"_index\":\"docs\",\"_type\":\"_doc\",\"_id\":\"1\",\"_score\":null,"
+						+ "\"_source\":{\"id\":\"1\"},\"sort\":[1]},"
+						+ "{\"_index\":\"docs\",\"_type\":\"_doc\",\"_id\":\"2\",\"_score\":null,"
+						+ "\"_source\":{\"id\":\"2\"},\"sort\":[2]}]}}");
+			}
+		});
+		server.start();
+		try (RestHighLevelClient client = new RestHighLevelClient(
+				RestClient.builder(new HttpHost("127.0.0.1", server.getAddress().getPort())))) {
+			ElasticsearchTemplate template = new ElasticsearchTemplate(client, new ObjectMapper());
+			SearchSourceBuilder source = new SearchSourceBuilder().sort("id", SortOrder.ASC);
+			for (int i = 0; i < 3; i++) {
+				Page<Doc> page = template.searchScrollDeepPaging(source, 1, 2, new String[] { "docs" }, "1m",
+						Doc.class);
+				assertEquals(2, page.getList().size());
+				assertNull(page.getCursor());
+			}
+			assertEquals(3, opened.get());
+			assertEquals(opened.get(), closed.get());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	void splitBulkGoesThroughSyncOnlyCustomExecutor() throws IOException {
+		HttpServer server = bulkServer(200);
+		AtomicInteger calls = new AtomicInteger();
+		Executor delegate = new DefaultExecutorImpl(1);
+		Executor counting = new Executor() {
+			@Override
+			public <R, S> S exec(Operator<R, S> operator, R request) {
+				calls.incrementAndGet();
+				return delegate.exec(operator, request);
+			}
+		};
+		try (RestHighLevelClient client = new RestHighLevelClient(
+				RestClient.builder(new HttpHost("127.0.0.1", server.getAddress().getPort())))) {
+			ElasticsearchTemplate template = new ElasticsearchTemplate(client, new ObjectMapper(), counting);
+			BulkResponse response = template.bulkInsert("docs", List.of(doc("1"), doc("2"), doc("3")), 1);
+			assertEquals(3, response.getItems().length);
+			assertEquals(3, calls.get());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	void cachedCountReturnsNewResponses() throws IOException {
+		AtomicInteger requests = new AtomicInteger();
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			requests.incrementAndGet();
+			respond(exchange, "{\"count\":5,\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0}}");
+		});
+		server.start();
+		try (RestHighLevelClient client = new RestHighLevelClient(
+				RestClient.builder(new HttpHost("127.0.0.1", server.getAddress().getPort())))) {
+			ElasticsearchTemplate template = new ElasticsearchTemplate(client, new ObjectMapper());
+			template.setQueryCache(new QueryCache(1 << 20, null));
+			CountResponse first = template.count(QueryBuilders.matchAllQuery(), "docs");
+			CountResponse second = template.count(QueryBuilders.matchAllQuery(), "docs");
+			assertEquals(1, requests.get());
+			assertNotSame(first, second);
+			assertEquals(5, second.getCount());
+			assertEquals(1, second.getTotalShards());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	void streamingBulkReportsMidStreamFailure() throws IOException {
+		HttpServer server = bulkServer(200);
+		try (RestHighLevelClient client = new RestHighLevelClient(
+				RestClient.builder(new HttpHost("127.0.0.1", server.getAddress().getPort())))) {
+			ElasticsearchTemplate template = new ElasticsearchTemplate(client, new ObjectMapper());
+			Iterator<Doc> failing = IntStream.range(0, 10).mapToObj(i -> {
+				if (i == 3) {
+					throw new IllegalStateException("broken source");
+				}
+				return doc(String.valueOf(i));
+			}).iterator();
+			RuntimeException e = assertThrows(RuntimeException.class,
+					() -> template.bulkInsertStreaming("docs", failing, 0, false, null));
+			assertTrue(hasCause(e, "broken source"), e.toString());
+
+			// the failure is confined to its own request
+			assertEquals(2, template.bulkInsertStreaming("docs", List.of(doc("1"), doc("2")).iterator(), 0, false,
+					null));
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	void streamingBulkIsNotReplayedOnAnotherNode() throws IOException {
+		HttpServer first = bulkServer(503);
+		HttpServer second = bulkServer(503);
+		try (RestHighLevelClient client = new RestHighLevelClient(
+				RestClient.builder(new HttpHost("127.0.0.1", first.getAddress().getPort()),
+						new HttpHost("127.0.0.1", second.getAddress().getPort())))) {
+			ElasticsearchTemplate template = new ElasticsearchTemplate(client, new ObjectMapper());
+			RuntimeException e = assertThrows(RuntimeException.class,
+					() -> template.bulkInsertStreaming("docs", List.of(doc("1")).iterator(), 0, false, null));
+			assertTrue(hasCause(e, "cannot be replayed"), e.toString());
+		} finally {
+			first.stop(0);
+			second.stop(0);
+		}
+	}
+
+	@Test
+	void coalescedFindByIdFailsOnlyTheFailedItem() throws IOException {
+		AtomicInteger requests = new AtomicInteger();
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			requests.incrementAndGet();
+			JsonNode docs = new ObjectMapper().readTree(exchange.getRequestBody().readAllBytes()).get("docs");
+			StringBuilder sb = new StringBuilder("{\"docs\":[");
+			for (int i = 0; i < docs.size(); i++) {
+				String id = docs.get(i).get("_id").asText();
+				sb.append(i > 0 ? "," : "").append("{\"_index\":\"docs\",\"_type\":\"_doc\",\"_id\":\"")
+						.append(id).append("\",");
+				if (id.equals("bad")) {
+					sb.append("\"error\":{\"type\":\"shard_not_available_exception\",\"reason\":\"bad shard\"}}");
+				} else {
+					sb.append("\"_version\":1,\"_seq_no\":0,\"_primary_term\":1,\"found\":true,")
+							.append("\"_source\":{\"id\":\"").append(id).append("\"}}");
+				}
+			}
+			respond(exchange, sb.append("]}").toString());
+		});
+		server.start();
+		try (RestHighLevelClient client = new RestHighLevelClient(
+				RestClient.builder(new HttpHost("127.0.0.1", server.getAddress().getPort())))) {
+			ElasticsearchTemplate template = new ElasticsearchTemplate(client, new ObjectMapper());
+			template.setFindByIdCoalescing(Duration.ofMillis(50), 10);
+			CompletableFuture<GetResponse> first = template.findByIdFuture("docs", "1");
+			CompletableFuture<GetResponse> bad = template.findByIdFuture("docs", "bad");
+			CompletableFuture<GetResponse> second = template.findByIdFuture("docs", "2");
+
+			assertEquals("1", first.join().getId());
+			assertEquals("2", second.join().getId());
+			CompletionException e = assertThrows(CompletionException.class, bad::join);
+			assertTrue(hasCause(e, "bad shard"), e.toString());
+			assertEquals(1, requests.get());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	/**
+	 * 读完请求体后按条目数返回批量响应
+	 */
+	private static HttpServer bulkServer(int status) throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+			if (status != 200) {
+				exchange.sendResponseHeaders(status, -1);
+				exchange.close();
+				return;
+			}
+			long items = body.lines().filter(line -> !line.isEmpty()).count() / 2;
+			StringBuilder sb = new StringBuilder("{\"took\":1,\"errors\":false,\"items\":[");
+			for (long i = 0; i < items; i++) {
+				sb.append(i > 0 ? "," : "").append("{\"index\":{\"_index\":\"docs\",\"_type\":\"_doc\",")
+						.append("\"_id\":\"").append(i).append("\",\"_version\":1,\"result\":\"created\",")
+						.append("\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},")
+						.append("\"_seq_no\":1,\"_primary_term\":1,\"status\":201}}");
+			}
+			respond(exchange, sb.append("]}").toString());
+		});
+		server.start();
+		return server;
+	}
+
+	private static boolean hasCause(Throwable t, String message) {
+		for (Throwable c = t; c != null; c = c.getCause()) {
+			if (c.getMessage() != null && c.getMessage().contains(message)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Doc doc(String id) {
+		Doc doc = new Doc();
+		doc.setId(id);
+		return doc;
+	}
+
+	private static void respond(HttpExchange exchange, String json) throws IOException {
+		try (InputStream in = exchange.getRequestBody()) {
+			in.readAllBytes();
+		}
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	public static class Doc implements ElasticsearchId {
+
+		private String id;
+
+		public String getId() {
+			return id;
+		}
+
+		public void setId(String id) {
+			this.id = id;
+		}
+
+		@Override
+		public String getElasticsearchId() {
+			return id;
+		}
+
+	}
+
+}
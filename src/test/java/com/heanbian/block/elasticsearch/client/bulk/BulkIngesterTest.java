@@ -0,0 +1,190 @@
+package com.heanbian.block.elasticsearch.client.bulk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * @author heanbian
+ *
+ */
+class BulkIngesterTest {
+
+	private final List<Integer> sent = new CopyOnWriteArrayList<>();
+
+	@Test
+	void flushesWhenBulkActionsReached() {
+		BulkIngester ingester = ingester(recording(), new BulkIngesterOptions().setFlushInterval(null)
+				.setBulkActions(3).setBulkSize(0).setConcurrentRequests(0));
+		add(ingester, 7);
+		assertEquals(List.of(3, 3), sent);
+		ingester.close();
+		assertEquals(List.of(3, 3, 1), sent);
+	}
+
+	@Test
+	void flushesWhenBulkSizeReached() {
+		long size = new BulkRequest().add(new DeleteRequest("docs", "1")).estimatedSizeInBytes();
+		BulkIngester ingester = ingester(recording(), new BulkIngesterOptions().setFlushInterval(null)
+				.setBulkActions(0).setBulkSize(2 * size).setConcurrentRequests(0));
+		add(ingester, 5);
+		assertEquals(List.of(2, 2), sent);
+		ingester.close();
+		assertEquals(List.of(2, 2, 1), sent);
+	}
+
+	@Test
+	void flushesOnInterval() throws InterruptedException {
+		CountDownLatch flushed = new CountDownLatch(1);
+		BulkIngester ingester = ingester(request -> {
+			sent.add(request.numberOfActions());
+			flushed.countDown();
+			return response();
+		}, new BulkIngesterOptions().setBulkActions(1000).setFlushInterval(Duration.ofMillis(20)));
+		add(ingester, 2);
+		assertTrue(flushed.await(5, TimeUnit.SECONDS));
+		assertEquals(List.of(2), sent);
+		ingester.close();
+	}
+
+	@Test
+	void limitsConcurrentRequests() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger inFlight = new AtomicInteger();
+		AtomicInteger maxInFlight = new AtomicInteger();
+		BulkIngester ingester = ingester(request -> {
+			maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			inFlight.decrementAndGet();
+			sent.add(request.numberOfActions());
+			return response();
+		}, new BulkIngesterOptions().setFlushInterval(null).setBulkActions(1).setConcurrentRequests(2));
+
+		Thread producer = new Thread(() -> add(ingester, 5));
+		producer.start();
+		Thread.sleep(200);
+		assertTrue(producer.isAlive(), "add should block while both permits are taken");
+		assertEquals(2, inFlight.get());
+
+		release.countDown();
+		producer.join(5000);
+		assertTrue(ingester.awaitClose(5, TimeUnit.SECONDS));
+		assertEquals(5, sent.size());
+		assertEquals(2, maxInFlight.get());
+	}
+
+	@Test
+	void awaitCloseDrainsInFlightBatches() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		BulkIngester ingester = ingester(request -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			sent.add(request.numberOfActions());
+			return response();
+		}, new BulkIngesterOptions().setFlushInterval(null).setBulkActions(2).setConcurrentRequests(2));
+		add(ingester, 3);
+
+		assertFalse(ingester.awaitClose(100, TimeUnit.MILLISECONDS));
+		assertTrue(sent.isEmpty());
+		release.countDown();
+		assertTrue(ingester.awaitClose(5, TimeUnit.SECONDS));
+		assertEquals(3, sent.stream().mapToInt(Integer::intValue).sum());
+	}
+
+	@Test
+	void reportsFailuresToListener() {
+		RuntimeException failure = new RuntimeException("rejected");
+		List<Long> before = new CopyOnWriteArrayList<>();
+		List<Throwable> failures = new CopyOnWriteArrayList<>();
+		BulkIngester ingester = ingester(request -> {
+			throw failure;
+		}, new BulkIngesterOptions().setFlushInterval(null).setBulkActions(2).setConcurrentRequests(0)
+				.setListener(new BulkIngester.Listener() {
+
+					@Override
+					public void beforeBulk(long executionId, BulkRequest request) {
+						before.add(executionId);
+					}
+
+					@Override
+					public void afterBulk(long executionId, BulkRequest request, Throwable t) {
+						assertEquals(2, request.numberOfActions());
+						failures.add(t);
+					}
+				}));
+		add(ingester, 2);
+		assertEquals(List.of(1L), before);
+		assertEquals(1, failures.size());
+		assertSame(failure, failures.get(0));
+		ingester.close();
+	}
+
+	@Test
+	void interruptedAddKeepsRequestsBuffered() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		BulkIngester ingester = ingester(request -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			sent.add(request.numberOfActions());
+			return response();
+		}, new BulkIngesterOptions().setFlushInterval(null).setBulkActions(1).setConcurrentRequests(1));
+		add(ingester, 1);// takes the only permit
+
+		Thread.currentThread().interrupt();
+		add(ingester, 1);
+		assertTrue(Thread.interrupted());
+
+		release.countDown();
+		assertTrue(ingester.awaitClose(5, TimeUnit.SECONDS));
+		assertEquals(List.of(1, 1), sent);
+	}
+
+	private Function<BulkRequest, BulkResponse> recording() {
+		return request -> {
+			sent.add(request.numberOfActions());
+			return response();
+		};
+	}
+
+	private static BulkIngester ingester(Function<BulkRequest, BulkResponse> sender, BulkIngesterOptions options) {
+		return new BulkIngester(sender, new ObjectMapper(), options);
+	}
+
+	private static void add(BulkIngester ingester, int count) {
+		for (int i = 0; i < count; i++) {
+			ingester.add(new DeleteRequest("docs", String.valueOf(i)));
+		}
+	}
+
+	private static BulkResponse response() {
+		return new BulkResponse(new BulkItemResponse[0], 1);
+	}
+
+}
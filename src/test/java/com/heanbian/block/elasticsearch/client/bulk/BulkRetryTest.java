@@ -0,0 +1,120 @@
+package com.heanbian.block.elasticsearch.client.bulk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.rest.RestStatus;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author heanbian
+ *
+ */
+class BulkRetryTest {
+
+	private final List<List<String>> sent = new CopyOnWriteArrayList<>();
+
+	@Test
+	void retriesOnlyRejectedItemsAndKeepsOrder() {
+		BulkRetry retry = new BulkRetry(responding(List.of(
+				Map.of("1", RestStatus.TOO_MANY_REQUESTS, "2", RestStatus.BAD_REQUEST, "3",
+						RestStatus.SERVICE_UNAVAILABLE),
+				Map.of())), BackoffPolicy.constantBackoff(TimeValue.ZERO, 3));
+
+		BulkResponse response = retry.send(request("0", "1", "2", "3"));
+
+		assertEquals(List.of(List.of("0", "1", "2", "3"), List.of("1", "3")), sent);
+		BulkItemResponse[] items = response.getItems();
+		assertEquals(4, items.length);
+		for (int i = 0; i < items.length; i++) {
+			assertEquals(i, items[i].getItemId());
+			assertEquals(String.valueOf(i), items[i].getId());
+		}
+		assertFalse(items[1].isFailed());
+		assertFalse(items[3].isFailed());
+		assertTrue(items[2].isFailed());
+		assertEquals(RestStatus.BAD_REQUEST, items[2].status());
+	}
+
+	@Test
+	void givesUpWhenBackoffIsExhausted() {
+		Map<String, RestStatus> rejected = Map.of("0", RestStatus.TOO_MANY_REQUESTS);
+		BulkRetry retry = new BulkRetry(responding(List.of(rejected, rejected, rejected, rejected)),
+				BackoffPolicy.constantBackoff(TimeValue.ZERO, 2));
+
+		BulkResponse response = retry.send(request("0", "1"));
+
+		assertEquals(List.of(List.of("0", "1"), List.of("0"), List.of("0")), sent);
+		assertTrue(response.getItems()[0].isFailed());
+		assertEquals(RestStatus.TOO_MANY_REQUESTS, response.getItems()[0].status());
+		assertFalse(response.getItems()[1].isFailed());
+	}
+
+	@Test
+	void keepsFailuresWhenRetryRequestFails() {
+		Function<BulkRequest, BulkResponse> first = responding(List.of(Map.of("1", RestStatus.SERVICE_UNAVAILABLE)));
+		BulkRetry retry = new BulkRetry(request -> {
+			if (!sent.isEmpty()) {
+				throw new IllegalStateException("node down");
+			}
+			return first.apply(request);
+		}, BackoffPolicy.constantBackoff(TimeValue.ZERO, 3));
+
+		BulkResponse response = retry.send(request("0", "1"));
+
+		assertEquals(1, sent.size());
+		assertTrue(response.getItems()[1].isFailed());
+		assertEquals(RestStatus.SERVICE_UNAVAILABLE, response.getItems()[1].status());
+	}
+
+	/**
+	 * 第 n 次调用按 statuses.get(n) 给出各 id 的失败状态，未列出的 id 成功
+	 */
+	private Function<BulkRequest, BulkResponse> responding(List<Map<String, RestStatus>> statuses) {
+		return request -> {
+			List<String> ids = request.requests().stream().map(DocWriteRequest::id).collect(Collectors.toList());
+			Map<String, RestStatus> failed = statuses.get(sent.size());
+			sent.add(ids);
+			List<BulkItemResponse> items = new ArrayList<>();
+			for (int i = 0; i < ids.size(); i++) {
+				items.add(item(i, ids.get(i), failed.get(ids.get(i))));
+			}
+			return new BulkResponse(items.toArray(new BulkItemResponse[0]), 1);
+		};
+	}
+
+	private static BulkItemResponse item(int position, String id, RestStatus status) {
+		if (status != null) {
+			return new BulkItemResponse(position, DocWriteRequest.OpType.DELETE,
+					new BulkItemResponse.Failure("docs", "_doc", id, new RuntimeException(status.name()), status));
+		}
+		return new BulkItemResponse(position, DocWriteRequest.OpType.DELETE,
+				new DeleteResponse(new ShardId("docs", "_na_", 0), "_doc", id, 1, 1, 1, true));
+	}
+
+	private static BulkRequest request(String... ids) {
+		BulkRequest request = new BulkRequest();
+		for (String id : ids) {
+			request.add(new DeleteRequest("docs", id));
+		}
+		return request;
+	}
+
+}
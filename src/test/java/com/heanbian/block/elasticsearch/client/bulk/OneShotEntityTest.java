@@ -0,0 +1,95 @@
+package com.heanbian.block.elasticsearch.client.bulk;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.entity.ContentType;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @author heanbian
+ *
+ */
+class OneShotEntityTest {
+
+	private static final ContentType NDJSON = ContentType.create("application/x-ndjson", StandardCharsets.UTF_8);
+	private static final byte[] BODY = "{\"delete\":{\"_index\":\"docs\",\"_id\":\"1\"}}\n"
+			.getBytes(StandardCharsets.UTF_8);
+
+	@Test
+	void cannotBeReplayed() throws IOException {
+		OneShotEntity entity = new OneShotEntity(new ByteArrayInputStream(BODY), NDJSON);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		entity.writeTo(out);
+		assertArrayEquals(BODY, out.toByteArray());
+
+		assertThrows(IOException.class, () -> entity.writeTo(new ByteArrayOutputStream()));
+		assertThrows(IOException.class, entity::getContent);
+		assertTrue(entity.isReplayed());
+	}
+
+	@Test
+	void replayBeforeCancellableIsSetCancelsRequest() throws Exception {
+		CountDownLatch received = new CountDownLatch(1);
+		CountDownLatch unblock = new CountDownLatch(1);
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			received.countDown();
+			try {
+				unblock.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			exchange.close();
+		});
+		server.start();
+		try (RestClient client = RestClient.builder(new HttpHost("127.0.0.1", server.getAddress().getPort()))
+				.build()) {
+			CompletableFuture<Response> future = new CompletableFuture<>();
+			Cancellable cancellable = client.performRequestAsync(new Request("GET", "/"), new ResponseListener() {
+
+				@Override
+				public void onSuccess(Response response) {
+					future.complete(response);
+				}
+
+				@Override
+				public void onFailure(Exception exception) {
+					future.completeExceptionally(exception);
+				}
+			});
+			assertTrue(received.await(5, TimeUnit.SECONDS));
+
+			OneShotEntity entity = new OneShotEntity(new ByteArrayInputStream(BODY), NDJSON);
+			entity.writeTo(new ByteArrayOutputStream());
+			assertThrows(IOException.class, () -> entity.writeTo(new ByteArrayOutputStream()));
+			entity.setCancellable(cancellable);
+
+			// a CancellationException completing the future is rethrown as is
+			assertThrows(CancellationException.class, () -> future.get(5, TimeUnit.SECONDS));
+		} finally {
+			unblock.countDown();
+			server.stop(0);
+		}
+	}
+
+}
@@ -0,0 +1,104 @@
+package com.heanbian.block.elasticsearch.client.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author heanbian
+ *
+ */
+class LruCacheTest {
+
+	@Test
+	void scanDoesNotFlushHotEntries() {
+		LruCache<Integer, Integer> cache = new LruCache<>(10, null);
+		for (int hot = 0; hot < 10; hot++) {
+			cache.put(hot, hot);
+		}
+		for (int round = 0; round < 15; round++) {
+			for (int hot = 0; hot < 10; hot++) {
+				cache.get(hot);
+			}
+		}
+		for (int cold = 100; cold < 1100; cold++) {
+			if (cache.get(cold) == null) {
+				cache.put(cold, cold);
+			}
+		}
+		for (int hot = 0; hot < 10; hot++) {
+			assertNotNull(cache.get(hot), "hot entry " + hot + " evicted by the scan");
+		}
+		assertEquals(10, cache.size());
+	}
+
+	@Test
+	void frequentNewcomerEvictsLeastRecentlyUsed() {
+		LruCache<String, String> cache = new LruCache<>(2, null);
+		cache.put("a", "a");
+		cache.put("b", "b");
+		cache.get("a");
+		for (int i = 0; i < 3; i++) {
+			cache.get("c");
+		}
+		cache.put("c", "c");
+		assertNotNull(cache.get("a"));
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("c"));
+	}
+
+	@Test
+	void rejectedNewcomerIsReportedAsRemoved() {
+		List<String> removed = new ArrayList<>();
+		LruCache<String, String> cache = new LruCache<>(1, null, v -> 1L, (k, v) -> removed.add(k));
+		cache.put("a", "a");
+		for (int i = 0; i < 3; i++) {
+			cache.get("a");
+		}
+		assertTrue(cache.put("b", "b", (old, v) -> true));
+		assertEquals(List.of("b"), removed);
+		assertNotNull(cache.get("a"));
+		assertEquals(1, cache.getEvictionCount());
+	}
+
+	@Test
+	void staysWithinWeightUnderConcurrency() throws Exception {
+		LruCache<Integer, Integer> cache = new LruCache<>(50, null);
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < 8; t++) {
+				futures.add(pool.submit(() -> {
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					for (int i = 0; i < 20_000; i++) {
+						int key = random.nextInt(200);
+						if (cache.get(key) == null) {
+							cache.put(key, key);
+						} else if (i % 97 == 0) {
+							cache.invalidate(key);
+						}
+					}
+				}));
+			}
+			for (Future<?> f : futures) {
+				f.get();
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		assertTrue(cache.size() <= 50, "size " + cache.size());
+		assertEquals(cache.size(), cache.getWeight());
+		assertEquals(8 * 20_000, cache.getHitCount() + cache.getMissCount());
+	}
+
+}
@@ -0,0 +1,117 @@
+package com.heanbian.block.elasticsearch.client.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author heanbian
+ *
+ */
+class QueryCacheTest {
+
+	private final QueryCache cache = new QueryCache(1 << 20, null);
+	private final AtomicInteger loads = new AtomicInteger();
+
+	@Test
+	void writeToOtherIndexDoesNotRejectFill() {
+		String value = cache.get(QueryCache.key("search", "{}", new String[] { "a" }, null), () -> {
+			cache.invalidateIndices("b");
+			return weighted("a");
+		});
+		assertEquals("a", value);
+		assertEquals(0, cache.getRejectedFillCount());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	void writeToQueriedIndexRejectsFill() {
+		cache.get(QueryCache.key("search", "{}", new String[] { "logs-*" }, null), () -> {
+			cache.invalidateIndices("logs-2021");
+			return weighted("a");
+		});
+		assertEquals(1, cache.getRejectedFillCount());
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	void invalidatesOnlyMatchingIndices() {
+		QueryCache.Key a = QueryCache.key("search", "{}", new String[] { "a" }, null);
+		QueryCache.Key b = QueryCache.key("search", "{}", new String[] { "b" }, null);
+		cache.get(a, () -> weighted("a"));
+		cache.get(b, () -> weighted("b"));
+		assertEquals(2, loads.get());
+
+		cache.invalidateIndices("a");
+		assertEquals(1, cache.size());
+		cache.get(b, () -> weighted("b"));
+		assertEquals(2, loads.get());
+		cache.get(a, () -> weighted("a"));
+		assertEquals(3, loads.get());
+	}
+
+	@Test
+	void unqualifiedQueryIsInvalidatedByAnyWrite() {
+		QueryCache.Key all = QueryCache.key("count", "{}", new String[0], null);
+		cache.get(all, () -> weighted(1L));
+		cache.invalidateIndices("anything");
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	void evictedKeysAreUnregistered() {
+		QueryCache small = new QueryCache(10, null);
+		for (int i = 0; i < 100; i++) {
+			small.get(QueryCache.key("search", "{" + i + "}", new String[] { "a" }, null),
+					() -> new QueryCache.Weighted<>(new byte[0], 10));
+		}
+		assertEquals(1, small.size());
+		small.invalidateIndices("a");
+		assertEquals(0, small.size());
+	}
+
+	@Test
+	void keyNotAdmittedIsUnregistered() {
+		QueryCache small = new QueryCache(10, null);
+		QueryCache.Key hot = QueryCache.key("search", "{hot}", new String[] { "a" }, null);
+		for (int i = 0; i < 5; i++) {
+			small.get(hot, () -> new QueryCache.Weighted<>(new byte[0], 10));
+		}
+		small.get(QueryCache.key("search", "{cold}", new String[] { "a", "b" }, null),
+				() -> new QueryCache.Weighted<>(new byte[0], 10));
+		assertEquals(1, small.size());
+		assertEquals(1, small.indexedKeyCount("a"));
+		assertEquals(0, small.indexedKeyCount("b"));
+	}
+
+	@Test
+	void invalidationUnregistersKeyFromAllIndices() {
+		cache.get(QueryCache.key("search", "{}", new String[] { "a", "b" }, null), () -> weighted("ab"));
+		assertEquals(1, cache.indexedKeyCount("a"));
+		assertEquals(1, cache.indexedKeyCount("b"));
+
+		cache.invalidateIndices("a");
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.indexedKeyCount("a"));
+		assertEquals(0, cache.indexedKeyCount("b"));
+	}
+
+	@Test
+	void rejectedFillIsNotIndexed() {
+		cache.get(QueryCache.key("search", "{}", new String[] { "a", "b" }, null), () -> {
+			cache.invalidateIndices("b");
+			return weighted("ab");
+		});
+		assertEquals(1, cache.getRejectedFillCount());
+		assertEquals(0, cache.indexedKeyCount("a"));
+		assertEquals(0, cache.indexedKeyCount("b"));
+	}
+
+	private <V> QueryCache.Weighted<V> weighted(V value) {
+		loads.incrementAndGet();
+		return new QueryCache.Weighted<>(value, 1);
+	}
+
+}
@@ -0,0 +1,47 @@
+package com.heanbian.block.elasticsearch.client.codec;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author heanbian
+ *
+ */
+class SearchResponseCodecTest {
+
+	private static final String JSON = "{\"took\":3,\"timed_out\":false,"
+			+ "\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0},"
+			+ "\"hits\":{\"total\":{\"value\":1,\"relation\":\"eq\"},\"max_score\":1.0,"
+			+ "\"hits\":[{\"_index\":\"a\",\"_type\":\"_doc\",\"_id\":\"1\",\"_score\":1.0,\"_source\":{\"v\":1}}]},"
+			+ "\"aggregations\":{\"sterms#by\":{\"doc_count_error_upper_bound\":0,\"sum_other_doc_count\":0,"
+			+ "\"buckets\":[{\"key\":\"x\",\"doc_count\":1}]}}}";
+
+	@Test
+	void roundTripsHitsAndTypedAggregations() {
+		assertTrue(SearchResponseCodec.isAvailable());
+		SearchResponse original = SearchResponseCodec.read(JSON.getBytes(StandardCharsets.UTF_8));
+		assertNotNull(original);
+
+		byte[] bytes = SearchResponseCodec.write(original);
+		SearchResponse first = SearchResponseCodec.read(bytes);
+		SearchResponse second = SearchResponseCodec.read(bytes);
+		assertNotSame(first, second);
+
+		assertEquals(3, first.getTook().millis());
+		assertEquals(1, first.getHits().getTotalHits().value);
+		assertEquals("1", first.getHits().getHits()[0].getId());
+		assertEquals("{\"v\":1}", first.getHits().getHits()[0].getSourceAsString());
+		Terms by = first.getAggregations().get("by");
+		assertEquals("x", by.getBuckets().get(0).getKeyAsString());
+		assertEquals(1, by.getBuckets().get(0).getDocCount());
+	}
+
+}
@@ -0,0 +1,168 @@
+package com.heanbian.block.elasticsearch.client.executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.http.HttpHost;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.Test;
+
+import com.heanbian.block.elasticsearch.client.operator.AsyncOperator;
+import com.heanbian.block.elasticsearch.client.operator.Operator;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 在平台线程池上验证异步桥接：中断等待的调用方会取消请求并保留中断状态，大量并发调用各自拿到自己的结果
+ *
+ * @author heanbian
+ *
+ */
+class AsyncBridgingExecutorTest {
+
+	@Test
+	void interruptCancelsRequestAndRestoresFlag() throws Exception {
+		CountDownLatch received = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/slow", exchange -> {
+			received.countDown();
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+		});
+		server.start();
+		ExecutorService callers = Executors.newFixedThreadPool(1);
+		try (RestClient client = RestClient
+				.builder(new HttpHost("127.0.0.1", server.getAddress().getPort())).build()) {
+			SlowOperator operator = new SlowOperator(client);
+			AsyncBridgingExecutor executor = new AsyncBridgingExecutor(new DefaultExecutorImpl(1), asyncExecutor());
+			AtomicReference<Thread> caller = new AtomicReference<>();
+			Future<Object[]> outcome = callers.submit(() -> {
+				caller.set(Thread.currentThread());
+				try {
+					executor.exec(operator, "r");
+					return new Object[] { null, Thread.currentThread().isInterrupted() };
+				} catch (RuntimeException e) {
+					return new Object[] { e.getCause(), Thread.currentThread().isInterrupted() };
+				}
+			});
+			assertTrue(received.await(5, TimeUnit.SECONDS));
+			caller.get().interrupt();
+
+			Object[] result = outcome.get(5, TimeUnit.SECONDS);
+			assertTrue(result[0] instanceof InterruptedException, String.valueOf(result[0]));
+			assertEquals(Boolean.TRUE, result[1]);
+			assertTrue(operator.cancelled.await(5, TimeUnit.SECONDS), "request was not cancelled");
+		} finally {
+			release.countDown();
+			callers.shutdownNow();
+			server.stop(0);
+		}
+	}
+
+	@Test
+	void manyConcurrentCallersGetTheirOwnResults() throws Exception {
+		ScheduledExecutorService responder = Executors.newScheduledThreadPool(4);
+		ExecutorService callers = Executors.newFixedThreadPool(200);
+		try {
+			DoublingOperator operator = new DoublingOperator(responder);
+			AsyncBridgingExecutor executor = new AsyncBridgingExecutor(new DefaultExecutorImpl(1), asyncExecutor());
+			List<Future<Integer>> results = new ArrayList<>();
+			for (int i = 0; i < 10_000; i++) {
+				final int n = i;
+				results.add(callers.submit(() -> executor.exec(operator, n)));
+			}
+			for (int i = 0; i < results.size(); i++) {
+				assertEquals(2 * i, results.get(i).get(30, TimeUnit.SECONDS));
+			}
+		} finally {
+			callers.shutdownNow();
+			responder.shutdownNow();
+		}
+	}
+
+	private static AsyncExecutor asyncExecutor() {
+		return new DefaultAsyncExecutorImpl(1, ExponentialBackoff.defaultBackoff(), RetryBudget.unlimited(),
+				Duration.ofSeconds(30), DefaultAsyncExecutorImpl.sharedScheduler());
+	}
+
+	private static final class SlowOperator implements Operator<String, String>, AsyncOperator<String, String> {
+
+		final CountDownLatch cancelled = new CountDownLatch(1);
+		private final RestClient client;
+
+		SlowOperator(RestClient client) {
+			this.client = client;
+		}
+
+		@Override
+		public String operator(String request) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Cancellable operator(String request, ActionListener<String> listener) {
+			return client.performRequestAsync(new Request("GET", "/slow"), new ResponseListener() {
+				@Override
+				public void onSuccess(Response response) {
+					listener.onResponse("ok");
+				}
+
+				@Override
+				public void onFailure(Exception exception) {
+					if (exception instanceof CancellationException) {
+						cancelled.countDown();
+					}
+					listener.onFailure(exception);
+				}
+			});
+		}
+	}
+
+	private static final class DoublingOperator implements Operator<Integer, Integer>, AsyncOperator<Integer, Integer> {
+
+		private final ScheduledExecutorService responder;
+
+		DoublingOperator(ScheduledExecutorService responder) {
+			this.responder = responder;
+		}
+
+		@Override
+		public Integer operator(Integer request) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Cancellable operator(Integer request, ActionListener<Integer> listener) {
+			long delay = ThreadLocalRandom.current().nextLong(2000);
+			responder.schedule(() -> listener.onResponse(request * 2), delay, TimeUnit.MICROSECONDS);
+			return null;
+		}
+	}
+
+}
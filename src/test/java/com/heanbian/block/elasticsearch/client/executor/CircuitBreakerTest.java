@@ -0,0 +1,218 @@
+package com.heanbian.block.elasticsearch.client.executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.client.Cancellable;
+import org.junit.jupiter.api.Test;
+
+import com.heanbian.block.elasticsearch.client.executor.CircuitBreaker.State;
+import com.heanbian.block.elasticsearch.client.operator.AsyncOperator;
+import com.heanbian.block.elasticsearch.client.operator.Operator;
+
+/**
+ * @author heanbian
+ *
+ */
+class CircuitBreakerTest {
+
+	private final AtomicLong now = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+	private final CircuitBreaker breaker = new CircuitBreaker(0.5, 4, Duration.ofSeconds(10), Duration.ofSeconds(5),
+			now::get);
+
+	@Test
+	void staysClosedBelowMinimumRequests() {
+		breaker.onFailure();
+		breaker.onFailure();
+		breaker.onFailure();
+		assertEquals(State.CLOSED, breaker.getState());
+		assertTrue(breaker.tryAcquire());
+	}
+
+	@Test
+	void opensWhenFailureRateReachesThreshold() {
+		breaker.onSuccess();
+		breaker.onSuccess();
+		breaker.onFailure();
+		assertEquals(State.CLOSED, breaker.getState());
+		breaker.onFailure();
+		assertEquals(State.OPEN, breaker.getState());
+		assertFalse(breaker.tryAcquire());
+	}
+
+	@Test
+	void failuresOutsideWindowAreForgotten() {
+		breaker.onFailure();
+		breaker.onFailure();
+		breaker.onFailure();
+		advance(Duration.ofSeconds(11));
+		breaker.onSuccess();
+		breaker.onSuccess();
+		breaker.onSuccess();
+		breaker.onFailure();
+		assertEquals(State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	void halfOpenAdmitsSingleProbe() {
+		open();
+		advance(Duration.ofSeconds(4));
+		assertFalse(breaker.tryAcquire());
+		advance(Duration.ofSeconds(1));
+		assertTrue(breaker.tryAcquire());
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		assertFalse(breaker.tryAcquire());
+	}
+
+	@Test
+	void probeSuccessClosesAndResetsWindow() {
+		open();
+		advance(Duration.ofSeconds(5));
+		assertTrue(breaker.tryAcquire());
+		breaker.onSuccess();
+		assertEquals(State.CLOSED, breaker.getState());
+		breaker.onFailure();
+		assertEquals(State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	void probeFailureReopens() {
+		open();
+		advance(Duration.ofSeconds(5));
+		assertTrue(breaker.tryAcquire());
+		breaker.onFailure();
+		assertEquals(State.OPEN, breaker.getState());
+		assertFalse(breaker.tryAcquire());
+		advance(Duration.ofSeconds(5));
+		assertTrue(breaker.tryAcquire());
+	}
+
+	@Test
+	void negativeClockIsHandled() {
+		now.set(-TimeUnit.HOURS.toNanos(1));
+		open();
+		assertEquals(State.OPEN, breaker.getState());
+	}
+
+	@Test
+	void executorReleasesProbeWhenDelegateThrowsError() {
+		CircuitBreakerExecutor executor = new CircuitBreakerExecutor(new DirectExecutor(), () -> breaker);
+		Operator<String, String> failing = r -> {
+			throw new IOException("connection refused");
+		};
+		for (int i = 0; i < 4; i++) {
+			assertThrows(UncheckedIOException.class, () -> executor.exec(failing, "r"));
+		}
+		assertEquals(State.OPEN, breaker.getState());
+		assertThrows(CircuitBreakerOpenException.class, () -> executor.exec(failing, "r"));
+
+		advance(Duration.ofSeconds(5));
+		Operator<String, String> erroring = r -> {
+			throw new StackOverflowError();
+		};
+		assertThrows(StackOverflowError.class, () -> executor.exec(erroring, "r"));
+		assertEquals(State.OPEN, breaker.getState());
+
+		advance(Duration.ofSeconds(5));
+		assertEquals("ok", executor.exec(r -> "ok", "r"));
+		assertEquals(State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	void executorDoesNotCountClientErrors() {
+		CircuitBreakerExecutor executor = new CircuitBreakerExecutor(new DirectExecutor(), () -> breaker);
+		Operator<String, String> notFound = r -> {
+			throw new IllegalArgumentException("bad request");
+		};
+		for (int i = 0; i < 10; i++) {
+			assertThrows(IllegalArgumentException.class, () -> executor.exec(notFound, "r"));
+		}
+		assertEquals(State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	void asyncFormSharesBreakersWithSyncForm() {
+		CircuitBreakerExecutor executor = new CircuitBreakerExecutor(new DirectExecutor(),
+				() -> new CircuitBreaker(0.5, 4, Duration.ofSeconds(10), Duration.ofSeconds(5), now::get));
+		AsyncExecutor async = executor.async(new DirectAsyncExecutor());
+		EchoOperator operator = new EchoOperator();
+		for (int i = 0; i < 4; i++) {
+			CompletableFuture<String> f = async.execAsync(operator, "fail");
+			assertTrue(f.isCompletedExceptionally());
+		}
+		assertEquals(State.OPEN, executor.breaker(EchoOperator.class).getState());
+		assertThrows(CircuitBreakerOpenException.class, () -> executor.exec(operator, "ok"));
+		ExecutionException e = assertThrows(ExecutionException.class, () -> async.execAsync(operator, "ok").get());
+		assertTrue(e.getCause() instanceof CircuitBreakerOpenException);
+
+		advance(Duration.ofSeconds(5));
+		assertEquals("ok", async.execAsync(operator, "ok").join());
+		assertEquals(State.CLOSED, executor.breaker(EchoOperator.class).getState());
+	}
+
+	private void open() {
+		for (int i = 0; i < 4; i++) {
+			breaker.onFailure();
+		}
+		assertEquals(State.OPEN, breaker.getState());
+	}
+
+	private void advance(Duration d) {
+		now.addAndGet(d.toNanos());
+	}
+
+	private static final class EchoOperator implements Operator<String, String>, AsyncOperator<String, String> {
+
+		@Override
+		public String operator(String request) throws IOException {
+			if ("fail".equals(request)) {
+				throw new IOException("connection refused");
+			}
+			return request;
+		}
+
+		@Override
+		public Cancellable operator(String request, ActionListener<String> listener) {
+			try {
+				listener.onResponse(operator(request));
+			} catch (IOException e) {
+				listener.onFailure(e);
+			}
+			return null;
+		}
+	}
+
+	private static final class DirectAsyncExecutor implements AsyncExecutor {
+
+		@Override
+		public <R, S> CompletableFuture<S> execAsync(AsyncOperator<R, S> operator, R request) {
+			CompletableFuture<S> future = new CompletableFuture<>();
+			operator.operator(request, ActionListener.wrap(future::complete, future::completeExceptionally));
+			return future;
+		}
+	}
+
+	private static final class DirectExecutor implements Executor {
+
+		@Override
+		public <R, S> S exec(Operator<R, S> operator, R request) {
+			try {
+				return operator.operator(request);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,157 @@
+package com.heanbian.block.elasticsearch.client.executor;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.client.Cancellable;
+import org.junit.jupiter.api.Test;
+
+import com.heanbian.block.elasticsearch.client.metrics.LatencyHistogram;
+import com.heanbian.block.elasticsearch.client.operator.AsyncOperator;
+import com.heanbian.block.elasticsearch.client.operator.Operator;
+import com.heanbian.block.elasticsearch.client.operator.ReadOperator;
+
+/**
+ * @author heanbian
+ *
+ */
+class HedgingExecutorTest {
+
+	private static final long DELAY_MILLIS = 100;
+
+	private final List<CompletableFuture<String>> sent = new CopyOnWriteArrayList<>();
+	private final AsyncExecutor recording = new AsyncExecutor() {
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public <R, S> CompletableFuture<S> execAsync(AsyncOperator<R, S> operator, R request) {
+			CompletableFuture<String> f = new CompletableFuture<>();
+			sent.add(f);
+			return (CompletableFuture<S>) f;
+		}
+	};
+	private final HedgingExecutor hedging = new HedgingExecutor(new DefaultExecutorImpl(1), recording,
+			new HedgingOptions().setMinSamples(0).setMinDelay(Duration.ofMillis(DELAY_MILLIS)).setMaxHedgeRatio(1.0),
+			null);
+	private final ReadRequestOperator operator = new ReadRequestOperator();
+
+	@Test
+	void hedgeIsSentAfterDelay() throws InterruptedException {
+		hedging.execAsync(operator, "q");
+		assertEquals(1, sent.size());
+		Thread.sleep(DELAY_MILLIS / 2);
+		assertEquals(1, sent.size());
+		awaitSent(2);
+		assertEquals(1, hedging.getHedgeCount());
+	}
+
+	@Test
+	void firstSuccessWinsAndLoserIsCancelled() throws InterruptedException {
+		CompletableFuture<String> result = hedging.execAsync(operator, "q");
+		awaitSent(2);
+		sent.get(1).complete("hedge");
+
+		assertEquals("hedge", result.join());
+		assertTrue(sent.get(0).isCancelled());
+		assertEquals(1, hedging.getHedgeWinCount());
+		// the cancelled primary is not a latency sample
+		assertEquals(0, hedging.getPrimaryLatency(ReadRequestOperator.class).getCount());
+	}
+
+	@Test
+	void fastPrimaryWinsWithoutHedge() throws InterruptedException {
+		CompletableFuture<String> result = hedging.execAsync(operator, "q");
+		Thread.sleep(DELAY_MILLIS / 4);
+		sent.get(0).complete("primary");
+
+		assertEquals("primary", result.join());
+		Thread.sleep(DELAY_MILLIS * 2);
+		assertEquals(1, sent.size());
+		assertEquals(0, hedging.getHedgeCount());
+		LatencyHistogram latency = hedging.getPrimaryLatency(ReadRequestOperator.class);
+		assertEquals(1, latency.getCount());
+		assertTrue(latency.getMaxMicros() >= TimeUnit.MILLISECONDS.toMicros(DELAY_MILLIS / 4),
+				"recorded " + latency.getMaxMicros() + "us");
+	}
+
+	@Test
+	void slowPrimaryLatencyIsRecordedWhenItWins() throws InterruptedException {
+		CompletableFuture<String> result = hedging.execAsync(operator, "q");
+		awaitSent(2);
+		sent.get(0).complete("primary");
+
+		assertEquals("primary", result.join());
+		assertTrue(sent.get(1).isCancelled());
+		LatencyHistogram latency = hedging.getPrimaryLatency(ReadRequestOperator.class);
+		assertEquals(1, latency.getCount());
+		assertTrue(latency.getMaxMicros() >= TimeUnit.MILLISECONDS.toMicros(DELAY_MILLIS));
+	}
+
+	@Test
+	void failsOnlyWhenBothFail() throws InterruptedException {
+		CompletableFuture<String> result = hedging.execAsync(operator, "q");
+		awaitSent(2);
+		RuntimeException primaryFailure = new RuntimeException("primary");
+		RuntimeException hedgeFailure = new RuntimeException("hedge");
+
+		sent.get(0).completeExceptionally(primaryFailure);
+		assertFalse(result.isDone());
+		sent.get(1).completeExceptionally(hedgeFailure);
+
+		CompletionException e = assertThrows(CompletionException.class, result::join);
+		assertSame(primaryFailure, e.getCause());
+		assertArrayEquals(new Throwable[] { hedgeFailure }, primaryFailure.getSuppressed());
+	}
+
+	@Test
+	void hedgeSuccessCoversPrimaryFailure() throws InterruptedException {
+		CompletableFuture<String> result = hedging.execAsync(operator, "q");
+		awaitSent(2);
+		sent.get(0).completeExceptionally(new RuntimeException("primary"));
+		sent.get(1).complete("hedge");
+		assertEquals("hedge", result.join());
+	}
+
+	@Test
+	void nonReadOperatorIsNotHedged() throws InterruptedException {
+		AsyncOperator<String, String> write = (request, listener) -> null;
+		hedging.execAsync(write, "q");
+		Thread.sleep(DELAY_MILLIS * 2);
+		assertEquals(1, sent.size());
+	}
+
+	private void awaitSent(int count) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (sent.size() < count && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		assertEquals(count, sent.size());
+	}
+
+	private static final class ReadRequestOperator
+			implements Operator<String, String>, AsyncOperator<String, String>, ReadOperator<String> {
+
+		@Override
+		public String operator(String request) {
+			return request;
+		}
+
+		@Override
+		public Cancellable operator(String request, ActionListener<String> listener) {
+			return null;
+		}
+	}
+
+}
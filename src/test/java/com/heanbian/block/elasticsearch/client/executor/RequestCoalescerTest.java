@@ -0,0 +1,130 @@
+package com.heanbian.block.elasticsearch.client.executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author heanbian
+ *
+ */
+class RequestCoalescerTest {
+
+	private final ManualScheduler scheduler = new ManualScheduler();
+	private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+
+	@AfterEach
+	void shutdown() {
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	void mapsResultsBackToCallers() {
+		RequestCoalescer<String, String> coalescer = coalescer(10);
+		CompletableFuture<String> a = coalescer.submit("a");
+		CompletableFuture<String> b = coalescer.submit("b");
+		CompletableFuture<String> missing = coalescer.submit("missing");
+		assertSame(a, coalescer.submit("a"));
+		assertFalse(a.isDone());
+
+		scheduler.runAll();
+		assertEquals(List.of(List.of("a", "b", "missing")), batches);
+		assertEquals("A", a.join());
+		assertEquals("B", b.join());
+		assertNull(missing.join());
+	}
+
+	@Test
+	void failedBatchFailsEveryCaller() {
+		RuntimeException failure = new RuntimeException("msearch failed");
+		RequestCoalescer<String, String> coalescer = new RequestCoalescer<>(
+				keys -> CompletableFuture.failedFuture(failure), Duration.ofMillis(10), 10, scheduler);
+		CompletableFuture<String> a = coalescer.submit("a");
+		CompletableFuture<String> b = coalescer.submit("b");
+		scheduler.runAll();
+		assertSame(failure, assertThrows(CompletionException.class, a::join).getCause());
+		assertSame(failure, assertThrows(CompletionException.class, b::join).getCause());
+	}
+
+	@Test
+	void sendsFullBatchBeforeWindowExpires() {
+		RequestCoalescer<String, String> coalescer = coalescer(2);
+		CompletableFuture<String> a = coalescer.submit("a");
+		CompletableFuture<String> b = coalescer.submit("b");
+		CompletableFuture<String> c = coalescer.submit("c");
+		assertEquals(List.of(List.of("a", "b")), batches);
+		assertTrue(a.isDone() && b.isDone());
+		assertFalse(c.isDone());
+
+		scheduler.runAll();
+		assertEquals(List.of(List.of("a", "b"), List.of("c")), batches);
+		assertEquals("C", c.join());
+	}
+
+	@Test
+	void staleWindowDoesNotFlushNextBatch() {
+		RequestCoalescer<String, String> coalescer = coalescer(2);
+		coalescer.submit("a");// schedules window 1
+		coalescer.submit("b");// full, sent
+		CompletableFuture<String> c = coalescer.submit("c");// schedules window 2
+		assertEquals(2, scheduler.tasks.size());
+
+		scheduler.tasks.remove(0).run();// window 1 expires after its batch was sent
+		assertFalse(c.isDone());
+		assertEquals(1, batches.size());
+
+		scheduler.tasks.remove(0).run();
+		assertEquals("C", c.join());
+	}
+
+	private RequestCoalescer<String, String> coalescer(int maxBatchSize) {
+		return new RequestCoalescer<>(keys -> {
+			batches.add(keys);
+			Map<String, String> values = new HashMap<>();
+			keys.stream().filter(k -> !k.equals("missing")).forEach(k -> values.put(k, k.toUpperCase()));
+			return CompletableFuture.completedFuture(values);
+		}, Duration.ofMillis(10), maxBatchSize, scheduler);
+	}
+
+	/**
+	 * 只记录定时任务，由测试决定何时执行
+	 */
+	private static final class ManualScheduler extends ScheduledThreadPoolExecutor {
+
+		final List<Runnable> tasks = new CopyOnWriteArrayList<>();
+
+		ManualScheduler() {
+			super(1);
+		}
+
+		@Override
+		public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+			tasks.add(command);
+			return null;
+		}
+
+		void runAll() {
+			while (!tasks.isEmpty()) {
+				tasks.remove(0).run();
+			}
+		}
+	}
+
+}
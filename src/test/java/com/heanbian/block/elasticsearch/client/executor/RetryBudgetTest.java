@@ -0,0 +1,112 @@
+package com.heanbian.block.elasticsearch.client.executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author heanbian
+ *
+ */
+class RetryBudgetTest {
+
+	private final AtomicLong now = new AtomicLong();
+
+	@Test
+	void startsWithOneSecondOfRefill() {
+		RetryBudget budget = new RetryBudget(0, 3, now::get);
+		assertEquals(3, drain(budget));
+	}
+
+	@Test
+	void depositsRatioPerRequest() {
+		RetryBudget budget = new RetryBudget(0.1, 0, now::get);
+		for (int i = 0; i < 25; i++) {
+			budget.onRequest();
+		}
+		assertEquals(2, drain(budget));
+		for (int i = 0; i < 5; i++) {
+			budget.onRequest();
+		}
+		// 0.5 left over + 0.5 deposited
+		assertEquals(1, drain(budget));
+	}
+
+	@Test
+	void refillsOverTime() {
+		RetryBudget budget = new RetryBudget(0, 10, now::get);
+		drain(budget);
+		advance(Duration.ofMillis(500));
+		assertEquals(5, drain(budget));
+		advance(Duration.ofMillis(500));
+		assertEquals(5, drain(budget));
+	}
+
+	@Test
+	void balanceIsCappedAtCapacity() {
+		RetryBudget budget = new RetryBudget(1, 10, now::get);
+		for (int i = 0; i < 1000; i++) {
+			budget.onRequest();
+		}
+		advance(Duration.ofMinutes(5));
+		assertEquals(100, drain(budget));
+	}
+
+	@Test
+	void longIdlePeriodDoesNotOverflow() {
+		RetryBudget budget = new RetryBudget(0.1, 10, now::get);
+		drain(budget);
+		// 10/s * 30 days in nanos overflows a long when multiplied directly
+		advance(Duration.ofDays(30));
+		assertEquals(100, drain(budget));
+		advance(Duration.ofDays(365));
+		assertEquals(100, drain(budget));
+	}
+
+	@Test
+	void largeRefillRateDoesNotOverflow() {
+		RetryBudget budget = new RetryBudget(0, Integer.MAX_VALUE, now::get);
+		assertTrue(budget.tryRetry());
+		advance(Duration.ofDays(30));
+		assertTrue(budget.tryRetry());
+	}
+
+	@Test
+	void exhaustedBudgetRejects() {
+		RetryBudget budget = new RetryBudget(0, 0, now::get);
+		assertFalse(budget.tryRetry());
+	}
+
+	@Test
+	void unlimitedAlwaysAllows() {
+		RetryBudget budget = RetryBudget.unlimited();
+		for (int i = 0; i < 10_000; i++) {
+			assertTrue(budget.tryRetry());
+		}
+	}
+
+	@Test
+	void rejectsNegativeArguments() {
+		assertThrows(IllegalArgumentException.class, () -> new RetryBudget(-0.1, 0));
+		assertThrows(IllegalArgumentException.class, () -> new RetryBudget(0.1, -1));
+	}
+
+	private void advance(Duration d) {
+		now.addAndGet(d.toNanos());
+	}
+
+	private static int drain(RetryBudget budget) {
+		int n = 0;
+		while (budget.tryRetry()) {
+			n++;
+		}
+		return n;
+	}
+
+}
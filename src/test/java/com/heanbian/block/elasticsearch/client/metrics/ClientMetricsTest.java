@@ -0,0 +1,90 @@
+package com.heanbian.block.elasticsearch.client.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.http.HttpHost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.Test;
+
+import com.heanbian.block.elasticsearch.client.executor.CircuitBreakerExecutor;
+import com.heanbian.block.elasticsearch.client.executor.DefaultExecutorImpl;
+import com.heanbian.block.elasticsearch.client.executor.ExponentialBackoff;
+import com.heanbian.block.elasticsearch.client.executor.Executor;
+import com.heanbian.block.elasticsearch.client.executor.RetryBudget;
+import com.heanbian.block.elasticsearch.client.operator.Operator;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @author heanbian
+ *
+ */
+class ClientMetricsTest {
+
+	@Test
+	void countsChunkedAndStreamingBodies() throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			exchange.getRequestBody().readAllBytes();
+			exchange.sendResponseHeaders(200, 0);// chunked
+			exchange.getResponseBody().write(new byte[5000]);
+			exchange.close();
+		});
+		server.start();
+		ClientMetrics metrics = new ClientMetrics();
+		try (RestClient client = RestClient.builder(new HttpHost("127.0.0.1", server.getAddress().getPort()))
+				.setHttpClientConfigCallback(metrics::instrument).build()) {
+			for (int i = 0; i < 3; i++) {
+				Request request = new Request("POST", "/_bulk");
+				request.setEntity(new InputStreamEntity(new ByteArrayInputStream(new byte[3000]), -1,
+						ContentType.APPLICATION_JSON));
+				assertEquals(-1, client.performRequest(request).getEntity().getContentLength());
+			}
+		} finally {
+			server.stop(0);
+		}
+		// 报文头另计，至少包含全部报文体
+		assertTrue(metrics.getBytesSent() >= 3 * 3000, "sent " + metrics.getBytesSent());
+		assertTrue(metrics.getBytesReceived() >= 3 * 5000, "received " + metrics.getBytesReceived());
+	}
+
+	@Test
+	void wrappedExecutorForwardsRetryListener() {
+		Executor executor = new CircuitBreakerExecutor(
+				new DefaultExecutorImpl(3, new ExponentialBackoff(Duration.ZERO, Duration.ZERO, 1.0), RetryBudget.unlimited()));
+		ClientMetrics metrics = new ClientMetrics();
+		executor.setRetryListener(metrics);
+		Operator<String, String> failing = request -> {
+			throw new IOException("down");
+		};
+		try {
+			executor.exec(failing, "x");
+		} catch (RuntimeException expected) {
+		}
+		assertEquals(2, metrics.operator(failing).getRetryCount());
+	}
+
+	@Test
+	void futureOperatorTimedToCompletion() throws InterruptedException {
+		ClientMetrics metrics = new ClientMetrics();
+		MetricsExecutor executor = new MetricsExecutor(new DefaultExecutorImpl(1), metrics);
+		CompletableFuture<String> pending = new CompletableFuture<>();
+		Operator<String, CompletableFuture<String>> operator = request -> pending;
+		executor.exec(operator, "x");
+		assertEquals(0, metrics.operator(operator).getSuccessCount());
+		Thread.sleep(50);
+		pending.complete("done");
+		assertEquals(1, metrics.operator(operator).getSuccessCount());
+		assertTrue(metrics.operator(operator).getLatency().getMaxMicros() >= 40_000);
+	}
+
+}
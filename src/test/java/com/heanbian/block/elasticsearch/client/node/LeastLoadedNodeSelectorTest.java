@@ -0,0 +1,182 @@
+package com.heanbian.block.elasticsearch.client.node;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @author heanbian
+ *
+ */
+class LeastLoadedNodeSelectorTest {
+
+	private final LeastLoadedNodeSelector selector = new LeastLoadedNodeSelector();
+	private final CountDownLatch unblock = new CountDownLatch(1);
+	private HttpServer server;
+
+	@AfterEach
+	void stopServer() {
+		unblock.countDown();
+		if (server != null) {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	void keepsFailoverNodes() {
+		List<Node> nodes = nodes(node(9201, "data"), node(9202, "data"), node(9203, "data"));
+		selector.select(nodes);
+		assertEquals(3, nodes.size());
+	}
+
+	@Test
+	void dropsDedicatedMasters() {
+		List<Node> nodes = nodes(node(9201, "master"), node(9202, "data_hot"), node(9203, "data_content", "master"));
+		selector.select(nodes);
+		assertEquals(Arrays.asList(9202, 9203), ports(nodes));
+	}
+
+	@Test
+	void pinsOneNodeWhileAvoiding() {
+		Node avoided = node(9201, "data");
+		for (int i = 0; i < 20; i++) {
+			List<Node> nodes = nodes(avoided, node(9202, "data"), node(9203, "data"));
+			selector.avoiding(avoided.getHost(), () -> {
+				selector.select(nodes);
+				return null;
+			});
+			assertEquals(1, nodes.size());
+			assertNotEquals(avoided.getHost(), nodes.get(0).getHost());
+			assertEquals(nodes.get(0).getHost(), selector.lastSelected());
+		}
+	}
+
+	@Test
+	void prunesStatsOfRemovedNodes() throws InterruptedException {
+		selector.setInFlightTimeout(Duration.ofMillis(1));
+		selector.select(nodes(node(9201, "data"), node(9202, "data"), node(9203, "data")));
+		assertEquals(3, selector.trackedHostCount());
+
+		Thread.sleep(150);// 超过 inFlightTimeout 和扫描间隔
+		selector.select(nodes(node(9201, "data"), node(9202, "data")));
+		assertEquals(2, selector.trackedHostCount());
+	}
+
+	@Test
+	void cancelledExchangeDoesNotLeakInFlight() throws Exception {
+		HttpHost host = startServer();
+		try (RestClient client = client(host)) {
+			Cancellable cancellable = client.performRequestAsync(new Request("GET", "/slow"), new ResponseListener() {
+				@Override
+				public void onSuccess(Response response) {
+				}
+
+				@Override
+				public void onFailure(Exception exception) {
+				}
+			});
+			awaitInFlight(host, 1);
+			cancellable.cancel();
+			selector.release(new HttpHost("127.0.0.1", 1));
+			assertEquals(1, selector.getInFlight(host));
+			selector.release(host);
+			assertEquals(0, selector.getInFlight(host));
+		}
+	}
+
+	@Test
+	void errorResponseFinishesOnlyItsOwnExchange() throws Exception {
+		HttpHost host = startServer();
+		try (RestClient client = client(host)) {
+			client.performRequestAsync(new Request("GET", "/slow"), new ResponseListener() {
+				@Override
+				public void onSuccess(Response response) {
+				}
+
+				@Override
+				public void onFailure(Exception exception) {
+				}
+			});
+			awaitInFlight(host, 1);
+			// 503 先经过响应拦截器，再触发失败监听，不能把另一个在途请求也结束掉
+			assertThrows(ResponseException.class, () -> client.performRequest(new Request("GET", "/unavailable")));
+			assertEquals(1, selector.getInFlight(host));
+			unblock.countDown();
+			awaitInFlight(host, 0);
+		}
+	}
+
+	private RestClient client(HttpHost host) {
+		return RestClient.builder(host).setNodeSelector(selector).setFailureListener(selector.failureListener())
+				.setHttpClientConfigCallback(selector::instrument).build();
+	}
+
+	private HttpHost startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/slow", exchange -> {
+			try {
+				unblock.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+		});
+		server.createContext("/unavailable", exchange -> {
+			exchange.sendResponseHeaders(503, -1);
+			exchange.close();
+		});
+		server.start();
+		return new HttpHost("127.0.0.1", server.getAddress().getPort());
+	}
+
+	private void awaitInFlight(HttpHost host, int expected) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (selector.getInFlight(host) != expected && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(expected, selector.getInFlight(host));
+	}
+
+	private static Node node(int port, String... roles) {
+		return new Node(new HttpHost("127.0.0.1", port), null, "node-" + port, "7.13.3",
+				new Node.Roles(new HashSet<>(Arrays.asList(roles))), null);
+	}
+
+	private static List<Node> nodes(Node... nodes) {
+		return new ArrayList<>(Arrays.asList(nodes));
+	}
+
+	private static List<Integer> ports(List<Node> nodes) {
+		List<Integer> ports = new ArrayList<>();
+		nodes.forEach(n -> ports.add(n.getHost().getPort()));
+		return ports;
+	}
+
+}